@@ -0,0 +1,160 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Shared fixtures for the benchmarks. They live in the library's package to
+ * reach {@link ScheduledJob} directly.
+ */
+final class BenchmarkJobs {
+	private BenchmarkJobs() {
+	}
+
+	/** does nothing and returns right away */
+	static final class NoOpJob implements BackgroundJob<Object> {
+		@Override
+		public Object work(BackgroundJobMonitor monitor) {
+			return null;
+		}
+
+		@Override
+		public String getDescription() {
+			return "no-op";
+		}
+	}
+
+	/** reports <code>items</code> increments of one */
+	static final class ReportingJob implements BackgroundJob<Object> {
+		private final int items;
+
+		ReportingJob(int items) {
+			this.items = items;
+		}
+
+		@Override
+		public Object work(BackgroundJobMonitor monitor) {
+			monitor.announceTotal(items);
+			for (int i = 0; i < items; i++) {
+				monitor.reportProgressIncrement(1);
+			}
+			return null;
+		}
+
+		@Override
+		public String getDescription() {
+			return "reporting";
+		}
+	}
+
+	/** runs the job on the thread calling {@link BackgroundThread#start()} */
+	static final BackgroundThreadFactory INLINE_THREADS = new BackgroundThreadFactory() {
+
+		@Override
+		public BackgroundThread createThread(final RunnableFuture<?> f) {
+			return new BackgroundThread() {
+
+				@Override
+				public void start() {
+					f.run();
+				}
+
+				@Override
+				public void join(long timeout) {
+				}
+			};
+		}
+	};
+
+	static final FutureFactory FUTURES = new FutureFactory() {
+
+		@Override
+		public <V> FutureTask<V> createFutureTask(Callable<V> callable) {
+			return new FutureTask<V>(callable);
+		}
+	};
+
+	static final BackgroundJobLogFactory NO_LOG = new BackgroundJobLogFactory() {
+
+		@Override
+		public BackgroundJobLog createJobLog(String id) {
+			return new BackgroundJobLog() {
+
+				@Override
+				public void log(BackgroundJobMonitor.Severity severity, Object message) {
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+	};
+
+	/** hands all progress to the blackhole, so it cannot be optimised away */
+	static BackgroundJobMonitor consumingMonitor(final Blackhole blackhole) {
+		return new BackgroundJobMonitor() {
+
+			@Override
+			public void log(Severity severity, Object message) {
+				blackhole.consume(message);
+			}
+
+			@Override
+			public boolean isAborting() {
+				return false;
+			}
+
+			@Override
+			public String getScheduledJobId() {
+				return "benchmark";
+			}
+
+			@Override
+			public void announceTotal(int totalItems) {
+				blackhole.consume(totalItems);
+			}
+
+			@Override
+			public void reportProgressIncrement(int items) {
+				blackhole.consume(items);
+			}
+
+			@Override
+			public void reportProgressAbsolute(int items) {
+				blackhole.consume(items);
+			}
+		};
+	}
+}
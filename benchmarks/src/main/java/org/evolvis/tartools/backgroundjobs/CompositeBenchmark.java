@@ -0,0 +1,90 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Overhead of {@link CompositeBackgroundJob} compared to running the same
+ * steps one after another with the parent's monitor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeBenchmark {
+	@Param({ "10" })
+	public int steps;
+
+	/** progress reports per step */
+	@Param({ "0", "1000" })
+	public int items;
+
+	private BackgroundJob<?>[] jobs;
+	private BackgroundJobMonitor monitor;
+
+	@Setup
+	public void setup(final Blackhole blackhole) {
+		monitor = BenchmarkJobs.consumingMonitor(blackhole);
+		jobs = new BackgroundJob<?>[steps];
+		for (int i = 0; i < steps; i++) {
+			jobs[i] = new BenchmarkJobs.ReportingJob(items);
+		}
+	}
+
+	@Benchmark
+	public List<?> composite() throws Exception {
+		return new CompositeBackgroundJob("benchmark", jobs).work(monitor);
+	}
+
+	@Benchmark
+	public Object plainSteps() throws Exception {
+		Object last = null;
+		for (BackgroundJob<?> job : jobs) {
+			last = job.work(monitor);
+		}
+		return last;
+	}
+}
@@ -0,0 +1,120 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end latency of no-op jobs.
+ * <ul>
+ * <li><code>submitToRunning</code>: from
+ * {@link BackgroundJobScheduler#schedule(BackgroundJob)} until the job's
+ * <code>work()</code> method is entered.</li>
+ * <li><code>submitToSucceeded</code>: from
+ * {@link BackgroundJobScheduler#schedule(BackgroundJob)} until
+ * {@link BackgroundJobStatus#join(long)} returns.</li>
+ * </ul>
+ * Both are measured with the default thread per job and with the pooled
+ * backend. See {@link JobStateMachineBenchmark} for the time spent between
+ * RUNNING and SUCCEEDED.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobLatencyBenchmark {
+	@Param({ "thread", "pooled" })
+	public String backend;
+
+	private BackgroundJobScheduler scheduler;
+	private PooledBackgroundThreadFactory pool;
+	private final BackgroundJob<Object> noOp = new BenchmarkJobs.NoOpJob();
+
+	@Setup
+	public void setup() {
+		scheduler = new BackgroundJobScheduler();
+		scheduler.setJobLogFactory(BenchmarkJobs.NO_LOG);
+		if ("pooled".equals(backend)) {
+			pool = new PooledBackgroundThreadFactory(1);
+			scheduler.setThreadFactory(pool);
+		}
+		scheduler.ensureStarted();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		scheduler.stop();
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Benchmark
+	public BackgroundJobStatus<Object> submitToRunning() throws InterruptedException {
+		final CountDownLatch running = new CountDownLatch(1);
+		final BackgroundJobStatus<Object> status = scheduler.schedule(new BackgroundJob<Object>() {
+
+			@Override
+			public Object work(BackgroundJobMonitor monitor) {
+				running.countDown();
+				return null;
+			}
+
+			@Override
+			public String getDescription() {
+				return "signalling";
+			}
+		});
+		running.await();
+		return status;
+	}
+
+	@Benchmark
+	public BackgroundJobStatus<Object> submitToSucceeded() throws InterruptedException {
+		final BackgroundJobStatus<Object> status = scheduler.schedule(noOp);
+		status.join(0);
+		return status;
+	}
+}
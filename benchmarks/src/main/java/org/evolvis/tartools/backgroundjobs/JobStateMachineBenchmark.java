@@ -0,0 +1,62 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The job's state machine alone: a no-op {@link ScheduledJob} going from
+ * SCHEDULED through STARTING and RUNNING to SUCCEEDED, executed on the
+ * calling thread so that no thread handoff is included. This is the
+ * scheduler's own share of the time between RUNNING and SUCCEEDED.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobStateMachineBenchmark {
+	private static final BackgroundJob<Object> NO_OP = new BenchmarkJobs.NoOpJob();
+
+	@Benchmark
+	public ScheduledJob<Object> runningToSucceeded() {
+		final ScheduledJob<Object> job = new ScheduledJob<Object>("benchmark", NO_OP,
+				BenchmarkJobs.INLINE_THREADS, BenchmarkJobs.FUTURES, BenchmarkJobs.NO_LOG);
+		job.execute();
+		return job;
+	}
+}
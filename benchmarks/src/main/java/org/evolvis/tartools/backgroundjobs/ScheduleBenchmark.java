@@ -0,0 +1,99 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link BackgroundJobScheduler#schedule(BackgroundJob)} with
+ * several submitting threads.
+ * <br>
+ * <br>
+ * The scheduler is not started and every job is aborted right after it was
+ * scheduled, so the queue stays small and the numbers cover submission plus
+ * cancellation of a waiting job, both of which take the scheduler lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleBenchmark {
+	private BackgroundJobScheduler scheduler;
+	private final BackgroundJob<Object> job = new BenchmarkJobs.NoOpJob();
+
+	@Setup
+	public void setup() {
+		scheduler = new BackgroundJobScheduler();
+		scheduler.setJobLogFactory(BenchmarkJobs.NO_LOG);
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.abortAll(info -> true);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public BackgroundJobStatus<Object> scheduleAndAbort1() {
+		return scheduleAndAbort();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public BackgroundJobStatus<Object> scheduleAndAbort4() {
+		return scheduleAndAbort();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public BackgroundJobStatus<Object> scheduleAndAbort16() {
+		return scheduleAndAbort();
+	}
+
+	private BackgroundJobStatus<Object> scheduleAndAbort() {
+		final BackgroundJobStatus<Object> status = scheduler.schedule(job);
+		status.abort();
+		return status;
+	}
+}
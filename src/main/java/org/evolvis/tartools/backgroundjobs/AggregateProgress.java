@@ -0,0 +1,231 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Combines the progress of several parts of a job into the progress of the
+ * job itself.
+ * <br>
+ * <br>
+ * Each part gets its own {@link BackgroundJobMonitor}, see
+ * {@link #newPart(long)}, to be handed to a sub-job or used by a worker
+ * thread. Parts may report from any number of threads at the same time:
+ * their counts are kept in {@link LongAdder}s, and the combined fraction is
+ * computed from them in floating point, so neither large totals nor
+ * concurrent reports get in the way. The parent monitor only hears about it
+ * when the combined progress changes in its resolution, and those reports
+ * are made one at a time.
+ * <br>
+ * <br>
+ * Every part contributes according to its weight the fraction of its
+ * announced total it has reported so far, or its full weight once it is
+ * {@link Part#done() done}.
+ *
+ * @since 1.29
+ */
+public class AggregateProgress {
+
+	/**
+	 * The monitor of one part.
+	 */
+	public final class Part implements BackgroundJobMonitor {
+		private final long weight;
+		private final LongAdder items = new LongAdder();
+		private volatile long total;
+		private volatile boolean done;
+
+		private Part(long weight) {
+			this.weight = weight;
+		}
+
+		@Override
+		public void log(Severity severity, Object message) {
+			parent.log(severity, message);
+		}
+
+		@Override
+		public boolean isAborting() {
+			return parent.isAborting();
+		}
+
+		@Override
+		public String getScheduledJobId() {
+			return parent.getScheduledJobId();
+		}
+
+		@Override
+		public void announceTotal(int totalItems) {
+			announceTotal((long) totalItems);
+		}
+
+		@Override
+		public void reportProgressIncrement(int items) {
+			reportProgressIncrement((long) items);
+		}
+
+		@Override
+		public void reportProgressAbsolute(int items) {
+			reportProgressAbsolute((long) items);
+		}
+
+		@Override
+		public void announceTotal(long totalItems) {
+			total = totalItems;
+			update();
+		}
+
+		@Override
+		public void reportProgressIncrement(long count) {
+			items.add(count);
+			update();
+		}
+
+		/**
+		 * Unlike increments, absolute reports should only come from one
+		 * thread at a time.
+		 *
+		 * @see BackgroundJobMonitor#reportProgressAbsolute(long)
+		 */
+		@Override
+		public void reportProgressAbsolute(long count) {
+			items.add(count - items.sum());
+			update();
+		}
+
+		/**
+		 * Counts this part with its full weight from now on, whatever it
+		 * reported itself.
+		 */
+		public void done() {
+			done = true;
+			update();
+		}
+
+		/**
+		 * Like {@link #done()}, but leaves it to the next report of any
+		 * part to pass this on to the parent.
+		 */
+		void markDone() {
+			done = true;
+		}
+
+		/**
+		 * @return the part of its total this part has reported, between 0
+		 *         and 1.
+		 */
+		public double getFraction() {
+			if (done) {
+				return 1;
+			}
+			final long t = total;
+			return t <= 0 ? 0 : Math.max(0, Math.min(1, (double) items.sum() / t));
+		}
+
+		/**
+		 * @return the weight given to {@link #newPart(long)}.
+		 */
+		public long getWeight() {
+			return weight;
+		}
+	}
+
+	private final BackgroundJobMonitor parent;
+	private final int resolution;
+	private volatile Part[] parts = new Part[0];
+	/** the progress last reported to the parent, guarded by this */
+	private volatile int reported = -1;
+
+	/**
+	 * Announces <code>resolution</code> as the total to the parent monitor.
+	 *
+	 * @param parent
+	 *            the monitor of the whole job.
+	 * @param resolution
+	 *            the total to report the combined progress in.
+	 */
+	public AggregateProgress(BackgroundJobMonitor parent, int resolution) {
+		if (resolution < 0) {
+			throw new IllegalArgumentException("negative resolution");
+		}
+		this.parent = parent;
+		this.resolution = resolution;
+		parent.announceTotal(resolution);
+	}
+
+	/**
+	 * @param weight
+	 *            the share of the new part in the combined progress,
+	 *            relative to the other parts.
+	 * @return the monitor of the new part.
+	 */
+	public synchronized Part newPart(long weight) {
+		if (weight < 0) {
+			throw new IllegalArgumentException("negative weight");
+		}
+		final Part part = new Part(weight);
+		final Part[] p = Arrays.copyOf(parts, parts.length + 1);
+		p[p.length - 1] = part;
+		parts = p;
+		return part;
+	}
+
+	/**
+	 * @return the combined progress of all parts, between 0 and 1.
+	 */
+	public double getFraction() {
+		double done = 0;
+		double total = 0;
+		for (final Part part : parts) {
+			done += part.weight * part.getFraction();
+			total += part.weight;
+		}
+		return total == 0 ? 0 : Math.min(1, done / total);
+	}
+
+	private int current() {
+		return (int) (getFraction() * resolution);
+	}
+
+	private void update() {
+		if (current() == reported) {
+			return;
+		}
+		synchronized (this) {
+			// recomputed under the lock, so the last report is never stale
+			final int value = current();
+			if (value != reported) {
+				reported = value;
+				parent.reportProgressAbsolute(value);
+			}
+		}
+	}
+}
@@ -0,0 +1,534 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobMonitor.Severity;
+
+/**
+ * A {@link BackgroundJobLogFactory} that takes logging off the job threads.
+ * <br>
+ * <br>
+ * {@link BackgroundJobLog#log(Severity, Object)} just puts the message into
+ * a bounded lock-free ring buffer shared by all jobs of the factory. A
+ * background writer thread takes the messages out in batches, formats them
+ * (this is where {@link Object#toString()} is called, so messages should not
+ * be changed after logging them) and writes them to a {@link Writer}, one
+ * file per job or a rolling file. What happens when the buffer is full is
+ * determined by the {@link OverflowPolicy}.
+ * <br>
+ * <br>
+ * Lines look like <code>2016-01-31T12:00:00.123Z INFO:job-id: message</code>.
+ * A {@link Throwable} message is written with its stack trace.
+ *
+ * @since 1.29
+ */
+public class AsyncBackgroundJobLogFactory implements BackgroundJobLogFactory, Closeable {
+
+	/**
+	 * What to do with a message while the buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait for the writer to make room.
+		 */
+		BLOCK,
+		/**
+		 * Drop {@link Severity#INFO} messages, wait for the writer for
+		 * warnings and errors.
+		 */
+		DROP_INFO,
+		/**
+		 * Drop the message.
+		 */
+		DROP
+	}
+
+	/** where the writer thread puts the formatted lines */
+	private interface Sink {
+		void write(String id, String line) throws IOException;
+
+		void closeJob(String id) throws IOException;
+
+		void flush() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	private static final int BATCH = 256;
+	/** the message closing a job's log, so that any severity can be logged */
+	private static final Object CLOSE_JOB = new Object();
+
+	private final Sink sink;
+	private final OverflowPolicy policy;
+	private final int mask;
+	/** per slot: the position it may be written at, or position + 1 once written */
+	private final AtomicLongArray sequences;
+	private final Severity[] severities;
+	private final String[] ids;
+	private final Object[] messages;
+	private final long[] times;
+	private final AtomicLong tail = new AtomicLong();
+	/** only touched by the writer thread, and after it exited under the lock */
+	private long head;
+	private final Thread writer;
+	private volatile boolean writerSleeping;
+	private volatile boolean closed;
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	private AsyncBackgroundJobLogFactory(Sink sink, int capacity, OverflowPolicy policy) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be at least 2");
+		}
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.sink = sink;
+		this.policy = policy;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.severities = new Severity[size];
+		this.ids = new String[size];
+		this.messages = new Object[size];
+		this.times = new long[size];
+		writer = new Thread(this::writeLoop, "BackgroundJob Log Writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Write all logs to the given writer, e.g.
+	 * <code>new OutputStreamWriter(System.err)</code>. The writer is flushed
+	 * after every batch but not closed.
+	 *
+	 * @param out
+	 *            the writer.
+	 * @param capacity
+	 *            the number of messages the buffer holds, rounded up to a
+	 *            power of two.
+	 * @param policy
+	 *            what to do when the buffer is full.
+	 */
+	public static AsyncBackgroundJobLogFactory toWriter(final Writer out, int capacity, OverflowPolicy policy) {
+		return new AsyncBackgroundJobLogFactory(new Sink() {
+			@Override
+			public void write(String id, String line) throws IOException {
+				out.write(line);
+			}
+
+			@Override
+			public void closeJob(String id) {
+				;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.flush();
+			}
+		}, capacity, policy);
+	}
+
+	/**
+	 * Write the log of each job to its own file <code>&lt;id&gt;.log</code>
+	 * in the given directory. A file is kept open until the job's log is
+	 * closed.
+	 *
+	 * @param directory
+	 *            the directory, which must exist.
+	 * @param capacity
+	 *            the number of messages the buffer holds, rounded up to a
+	 *            power of two.
+	 * @param policy
+	 *            what to do when the buffer is full.
+	 */
+	public static AsyncBackgroundJobLogFactory toJobFiles(final Path directory, int capacity, OverflowPolicy policy) {
+		return new AsyncBackgroundJobLogFactory(new Sink() {
+			private final Map<String, Writer> open = new HashMap<String, Writer>();
+
+			@Override
+			public void write(String id, String line) throws IOException {
+				Writer out = open.get(id);
+				if (out == null) {
+					out = Files.newBufferedWriter(directory.resolve(id.replaceAll("[^A-Za-z0-9._-]", "_") + ".log"),
+							StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+					open.put(id, out);
+				}
+				out.write(line);
+			}
+
+			@Override
+			public void closeJob(String id) throws IOException {
+				final Writer out = open.remove(id);
+				if (out != null) {
+					out.close();
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				for (Writer out : open.values()) {
+					out.flush();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				for (Writer out : open.values()) {
+					out.close();
+				}
+				open.clear();
+			}
+		}, capacity, policy);
+	}
+
+	/**
+	 * Write all logs to one file. Once it grows beyond <code>maxBytes</code>,
+	 * it is renamed to <code>file.1</code> (older ones to <code>file.2</code>
+	 * and so on) and a new file is started.
+	 *
+	 * @param file
+	 *            the log file.
+	 * @param maxBytes
+	 *            the size at which to start a new file.
+	 * @param maxFiles
+	 *            the number of files to keep, including the current one.
+	 * @param capacity
+	 *            the number of messages the buffer holds, rounded up to a
+	 *            power of two.
+	 * @param policy
+	 *            what to do when the buffer is full.
+	 */
+	public static AsyncBackgroundJobLogFactory toRollingFile(final Path file, final long maxBytes, final int maxFiles,
+			int capacity, OverflowPolicy policy) {
+		return new AsyncBackgroundJobLogFactory(new Sink() {
+			private Writer out;
+			private long bytes;
+
+			@Override
+			public void write(String id, String line) throws IOException {
+				if (out == null) {
+					out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+							StandardOpenOption.APPEND);
+					bytes = Files.size(file);
+				}
+				out.write(line);
+				// close enough for ASCII, which log lines mostly are
+				bytes += line.length();
+				if (bytes >= maxBytes) {
+					roll();
+				}
+			}
+
+			private void roll() throws IOException {
+				out.close();
+				out = null;
+				for (int i = maxFiles - 1; i > 0; i--) {
+					final Path older = i == 1 ? file : file.resolveSibling(file.getFileName() + "." + (i - 1));
+					if (Files.exists(older)) {
+						Files.move(older, file.resolveSibling(file.getFileName() + "." + i),
+								StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+				if (maxFiles <= 1) {
+					Files.deleteIfExists(file);
+				}
+			}
+
+			@Override
+			public void closeJob(String id) {
+				;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if (out != null) {
+					out.flush();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (out != null) {
+					out.close();
+					out = null;
+				}
+			}
+		}, capacity, policy);
+	}
+
+	@Override
+	public BackgroundJobLog createJobLog(final String id) {
+		return new BackgroundJobLog() {
+
+			@Override
+			public void log(Severity severity, Object message) {
+				offer(severity, id, message);
+			}
+
+			@Override
+			public void close() {
+				// never dropped, so that files are not left open
+				offer(null, id, CLOSE_JOB);
+			}
+		};
+	}
+
+	private void offer(Severity severity, String id, Object message) {
+		if (closed) {
+			if (message != CLOSE_JOB) {
+				dropped.increment();
+			}
+			return;
+		}
+		final boolean mayDrop = message != CLOSE_JOB
+				&& (policy == OverflowPolicy.DROP || policy == OverflowPolicy.DROP_INFO && severity == Severity.INFO);
+		int spins = 0;
+		while (!tryOffer(severity, id, message)) {
+			if (mayDrop || closed) {
+				if (message != CLOSE_JOB) {
+					dropped.increment();
+				}
+				return;
+			}
+			wakeWriter();
+			if (++spins < 100) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+			}
+		}
+		if (closed) {
+			// the writer may have stopped before seeing this message
+			discardUnwritten();
+		} else {
+			wakeWriter();
+		}
+	}
+
+	private boolean tryOffer(Severity severity, String id, Object message) {
+		long position = tail.get();
+		while (true) {
+			final int index = (int) position & mask;
+			final long sequence = sequences.get(index);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					severities[index] = severity;
+					ids[index] = id;
+					messages[index] = message;
+					times[index] = System.currentTimeMillis();
+					// publishes the fields to the writer
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (sequence < position) {
+				// full
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	private void wakeWriter() {
+		if (writerSleeping) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private void writeLoop() {
+		try {
+			writeAll();
+		} finally {
+			// producers must not wait for a writer that is gone
+			closed = true;
+			try {
+				sink.close();
+			} catch (Throwable e) {
+				failures.increment();
+			}
+		}
+	}
+
+	private void writeAll() {
+		final StringBuilder line = new StringBuilder(256);
+		while (true) {
+			int count = 0;
+			while (count < BATCH) {
+				final int index = (int) head & mask;
+				if (sequences.get(index) != head + 1) {
+					break;
+				}
+				final Severity severity = severities[index];
+				final String id = ids[index];
+				final Object message = messages[index];
+				final long time = times[index];
+				ids[index] = null;
+				messages[index] = null;
+				sequences.set(index, head + mask + 1);
+				head++;
+				count++;
+				try {
+					if (message == CLOSE_JOB) {
+						sink.closeJob(id);
+					} else {
+						line.setLength(0);
+						format(line, time, severity, id, message);
+						sink.write(id, line.toString());
+						written.increment();
+					}
+				} catch (Throwable e) {
+					// e.g. an Error from the message's toString()
+					failures.increment();
+				}
+			}
+			if (count > 0) {
+				try {
+					sink.flush();
+				} catch (Throwable e) {
+					failures.increment();
+				}
+				continue;
+			}
+			if (closed) {
+				break;
+			}
+			writerSleeping = true;
+			if (sequences.get((int) head & mask) != head + 1 && !closed) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+			}
+			writerSleeping = false;
+		}
+	}
+
+	/**
+	 * Waits for the writer to exit and drops everything published after it
+	 * stopped reading the ring.
+	 */
+	private synchronized void discardUnwritten() {
+		if (Thread.currentThread() == writer) {
+			return;
+		}
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		while (true) {
+			final int index = (int) head & mask;
+			if (sequences.get(index) != head + 1) {
+				break;
+			}
+			if (messages[index] != CLOSE_JOB) {
+				dropped.increment();
+			}
+			ids[index] = null;
+			messages[index] = null;
+			sequences.set(index, head + mask + 1);
+			head++;
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void format(StringBuilder line, long time, Severity severity, String id, Object message) {
+		line.append(Instant.ofEpochMilli(time)).append(' ').append(severity).append(':').append(id).append(": ");
+		if (message instanceof Throwable) {
+			final StringWriter trace = new StringWriter();
+			((Throwable) message).printStackTrace(new PrintWriter(trace));
+			line.append(trace);
+		} else {
+			line.append(message).append(System.lineSeparator());
+		}
+	}
+
+	/**
+	 * @return the number of messages dropped because the buffer was full or
+	 *         the factory closed.
+	 */
+	public long getDroppedMessages() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of messages written.
+	 */
+	public long getWrittenMessages() {
+		return written.sum();
+	}
+
+	/**
+	 * @return the number of messages that could not be formatted or written.
+	 */
+	public long getWriteFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Write all buffered messages, close the files and stop the writer
+	 * thread. Messages logged afterwards, or logged concurrently and not
+	 * reached by the writer any more, are counted as dropped.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+		discardUnwritten();
+	}
+}
@@ -136,4 +136,24 @@ public interface BackgroundJob<V> {
     public default boolean isVisible() {
         return true;
     }
+
+    /**
+     * The priority of this job. <br>
+     * <br>
+     *
+     * Jobs with a higher priority are started before jobs with a lower one,
+     * jobs with equal priority in the order in which they were scheduled.
+     * To keep low-priority jobs from starving, a waiting job gains one
+     * priority level per {@link BackgroundJobScheduler#getAgingInterval()}.
+     * <br>
+     * <br>
+     * Implementations can override this method; the default priority is 0.
+     * Negative values are allowed for background work nobody waits for.
+     *
+     * @return the priority of this job.
+     * @since 1.29
+     */
+    public default int getPriority() {
+        return 0;
+    }
 }
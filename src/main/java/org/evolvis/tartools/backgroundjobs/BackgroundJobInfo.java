@@ -121,6 +121,29 @@ public interface BackgroundJobInfo {
      */
     abstract int getWorkTotal();
 
+    /**
+     * Like {@link #getWorkDone()}, but not limited to the range of an
+     * <code>int</code>. For jobs reporting more than that, the
+     * <code>int</code> methods scale work done and total down alike.
+     *
+     * @return number of completed "units of work"
+     * @see BackgroundJobMonitor#announceTotal(long)
+     * @since 1.29
+     */
+    default long getWorkDoneLong() {
+        return getWorkDone();
+    }
+
+    /**
+     * Like {@link #getWorkTotal()}, see {@link #getWorkDoneLong()}.
+     *
+     * @return the expected total amount of work in "units of work".
+     * @since 1.29
+     */
+    default long getWorkTotalLong() {
+        return getWorkTotal();
+    }
+
     /**
      * The unique identifier assigned to this job by the scheduler.
      *
@@ -160,4 +183,70 @@ public interface BackgroundJobInfo {
      * @return a <code>boolean</code> indicating whether this job should be visible to the end user.
      */
     abstract boolean isVisible();
+
+    /**
+     * @see BackgroundJob#getPriority()
+     * @since 1.29
+     *
+     * @return the priority the job was scheduled with.
+     */
+    default int getPriority() {
+        return 0;
+    }
+
+    /**
+     * Get the time at which the job entered the given state. <br>
+     * <br>
+     * The value comes from {@link System#nanoTime()}, so it is only meaningful
+     * relative to other timestamps of the same JVM, e.g.
+     * <code>getStateTimestamp(State.STARTING) - getStateTimestamp(State.SCHEDULED)</code>
+     * is the time the job spent waiting in the queue.
+     *
+     * @param state
+     *            the state of interest.
+     * @return the {@link System#nanoTime()} at which the job entered the state,
+     *         or 0 if it never did (or this information is not available).
+     * @since 1.29
+     */
+    default long getStateTimestamp(State state) {
+        return 0;
+    }
+
+    /**
+     * Get the rate at which the job currently makes progress. <br>
+     * <br>
+     * The scheduler smoothes the rate over the last few seconds, so that
+     * bursty reports do not make it jump around. It drops to 0 once a running
+     * job has not reported any progress for a couple of seconds, so a job
+     * that is {@link State#RUNNING} with a throughput of 0 is stalled.
+     *
+     * @return units of work per second, or 0 if the job is not running or
+     *         the rate is not known (yet).
+     * @since 1.29
+     */
+    default double getThroughput() {
+        return 0;
+    }
+
+    /**
+     * Estimate how long the job will take to finish, from the remaining work
+     * and the current {@link #getThroughput() throughput}.
+     *
+     * @return the estimated time remaining in milliseconds, 0 if all work is
+     *         done, or -1 if the total is unknown or the job makes no
+     *         progress.
+     * @since 1.29
+     */
+    default long getEstimatedTimeRemaining() {
+        final long total = getWorkTotalLong();
+        if (total <= 0) {
+            return -1;
+        }
+        final long remaining = total - getWorkDoneLong();
+        if (remaining <= 0) {
+            return 0;
+        }
+        final double rate = getThroughput();
+        return rate > 0 ? (long) Math.ceil(remaining * 1000d / rate) : -1;
+    }
 }
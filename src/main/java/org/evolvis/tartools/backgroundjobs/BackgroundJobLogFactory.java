@@ -31,4 +31,17 @@ public interface BackgroundJobLogFactory {
 
 	BackgroundJobLog createJobLog(String id);
 
+	/**
+	 * Called once the scheduler has forgotten the job with the given id, so
+	 * that anything kept for it can be dropped. Always called on the factory
+	 * that created the log of the job, even if the scheduler uses another
+	 * one by now.
+	 *
+	 * @param id
+	 *            the id of the job.
+	 * @since 1.29
+	 */
+	default void release(String id) {
+	}
+
 }
@@ -110,4 +110,42 @@ public interface BackgroundJobMonitor {
 	 * @param items number of units of work completed since execution started.
 	 */
 	public void reportProgressAbsolute(int items);
+
+	/**
+	 * Like {@link #announceTotal(int)}, for totals that may exceed the range
+	 * of an <code>int</code>, e.g. when counting bytes. <br>
+	 * <br>
+	 * The monitors of the {@link BackgroundJobScheduler} and of
+	 * {@link AggregateProgress} count in 64 bits. The default implementation
+	 * clamps the value to the <code>int</code> range, so other monitors
+	 * should override all three <code>long</code> methods.
+	 *
+	 * @param totalItems the total units of work to be done.
+	 * @since 1.29
+	 */
+	public default void announceTotal(long totalItems) {
+		announceTotal(WorkUnits.toInt(totalItems, 0));
+	}
+
+	/**
+	 * Like {@link #reportProgressIncrement(int)}, see
+	 * {@link #announceTotal(long)}.
+	 *
+	 * @param items number of units of work completed since the last call.
+	 * @since 1.29
+	 */
+	public default void reportProgressIncrement(long items) {
+		reportProgressIncrement(WorkUnits.toInt(items, 0));
+	}
+
+	/**
+	 * Like {@link #reportProgressAbsolute(int)}, see
+	 * {@link #announceTotal(long)}.
+	 *
+	 * @param items number of units of work completed since execution started.
+	 * @since 1.29
+	 */
+	public default void reportProgressAbsolute(long items) {
+		reportProgressAbsolute(WorkUnits.toInt(items, 0));
+	}
 }
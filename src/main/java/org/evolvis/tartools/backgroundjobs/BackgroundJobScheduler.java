@@ -27,21 +27,27 @@ package org.evolvis.tartools.backgroundjobs;
  * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RunnableFuture;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
 
 public class BackgroundJobScheduler implements Runnable {
-	private final class MyThread implements BackgroundThread  {
+	private static final class MyThread implements BackgroundThread  {
 		private final Thread t;
-		boolean started = false;
 
 		private MyThread(Thread t) {
 			this.t = t;
@@ -50,24 +56,28 @@ public class BackgroundJobScheduler implements Runnable {
 		@Override
 		public void start() {
 			t.start();
-			started = true;
 		}
 
 		@Override
 		public void join(long timeout) throws InterruptedException {
-			synchronized (BackgroundJobScheduler.this) {
-				while (t.isAlive() || !started) {
-					BackgroundJobScheduler.this.wait(100);
-				}
-			}
 			t.join(timeout);
 		}
 	}
 
-	int jobsToKeep = 5;
-	final LinkedHashMap<String, BackgroundJobStatus<?>> scheduledJobs = new LinkedHashMap<String, BackgroundJobStatus<?>>();
-	final LinkedList<String> oldIds = new LinkedList<String>();
-	final LinkedBlockingQueue<BackgroundJobStatus<?>> queue = new LinkedBlockingQueue<BackgroundJobStatus<?>>();
+	private static final EnumSet<State> FINAL_STATES = EnumSet.of(State.ABORTED, State.FAILED, State.SUCCEEDED);
+
+	int parallelism = 1;
+	long progressEventInterval = 0;
+	int progressEventUnits = 0;
+	private JobEventDispatcher listenerDispatcher;
+	private volatile JobJournal journal;
+	private volatile JobHistory jobHistory;
+	/** written under the scheduler lock, read without it by {@link SchedulerMetrics} */
+	volatile int activeJobs = 0;
+	volatile int queueDepth = 0;
+	private final SchedulerMetrics metrics = new SchedulerMetrics(this);
+	final JobRegistry registry = new JobRegistry(5, 5);
+	final JobQueue queue = new JobQueue(60000);
 	private FutureFactory futureFactory = new FutureFactory() {
 
 		@Override
@@ -79,18 +89,8 @@ public class BackgroundJobScheduler implements Runnable {
 
 		@Override
 		public BackgroundThread createThread(RunnableFuture<?> f) {
-
-			final Thread t = new Thread(f) {
-				public void run() {
-					super.run();
-					BackgroundJobScheduler lock = BackgroundJobScheduler.this;
-					synchronized(lock){
-						lock.notifyAll();
-					}
-				};
-			};
-
-			return new MyThread(t);
+			// completion is signalled per job (see ScheduledJob.join)
+			return new MyThread(new Thread(f));
 		}
 	};
 
@@ -116,6 +116,48 @@ public class BackgroundJobScheduler implements Runnable {
 		}
 	};
 
+	/**
+	 * @return the journal of durable jobs, or <code>null</code>.
+	 * @since 1.29
+	 */
+	public JobJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Set the journal recording durable jobs, i.e. jobs scheduled with
+	 * {@link #scheduleDurable(String, Properties)}. Jobs still waiting when
+	 * the scheduler is stopped (or the JVM dies) can be scheduled again with
+	 * {@link #recover()} after a restart. Other jobs are not affected.
+	 *
+	 * @param journal
+	 *            the journal, or <code>null</code> for none.
+	 * @since 1.29
+	 */
+	public void setJournal(JobJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @return the history recording finished jobs, or <code>null</code>.
+	 * @since 1.29
+	 */
+	public JobHistory getJobHistory() {
+		return jobHistory;
+	}
+
+	/**
+	 * Record every job finishing from now on in the given history, which
+	 * reaches much further back than {@link #setJobsToKeep(int)}.
+	 *
+	 * @param jobHistory
+	 *            the history, or <code>null</code> for none.
+	 * @since 1.29
+	 */
+	public void setJobHistory(JobHistory jobHistory) {
+		this.jobHistory = jobHistory;
+	}
+
 	public BackgroundJobLogFactory getJobLogFactory() {
 		return jobLogFactory;
 	}
@@ -140,6 +182,123 @@ public class BackgroundJobScheduler implements Runnable {
 		return scheduledJob;
 	}
 
+	/**
+	 * Schedule a durable job, see {@link #setJournal(JobJournal)}.
+	 * <br>
+	 * <br>
+	 * The job is created by the factory registered with the journal for the
+	 * given type and configured with the given properties. This method
+	 * returns once the submission is on disk.
+	 *
+	 * @param type
+	 *            the job type, see
+	 *            {@link JobJournal#registerFactory(String, java.util.function.Supplier)}.
+	 * @param properties
+	 *            the job's properties, all that is needed to run it again
+	 *            after a restart.
+	 * @return the scheduled job.
+	 * @throws IOException
+	 *             if the submission could not be written to the journal. The
+	 *             job is not scheduled then.
+	 * @throws IllegalStateException
+	 *             if no journal is set.
+	 * @throws IllegalArgumentException
+	 *             if no factory is registered for the type.
+	 * @since 1.29
+	 */
+	public BackgroundJobStatus<?> scheduleDurable(String type, Properties properties) throws IOException {
+		final JobJournal journal = requireJournal();
+		final BackgroundJobWithProperties<?> job = journal.createJob(type, properties);
+		final String id = UUID.randomUUID().toString();
+		journal.submitted(id, type, properties);
+		return schedule(id, job);
+	}
+
+	/**
+	 * Schedule several durable jobs of the same type, see
+	 * {@link #scheduleDurable(String, Properties)}. All submissions are
+	 * written with a single sync, so a single thread can submit many jobs
+	 * quickly.
+	 *
+	 * @param type
+	 *            the job type.
+	 * @param properties
+	 *            the properties of each job.
+	 * @return the scheduled jobs, in the order of their properties.
+	 * @throws IOException
+	 *             if the submissions could not be written to the journal.
+	 *             None of the jobs is scheduled then.
+	 * @throws IllegalStateException
+	 *             if no journal is set.
+	 * @throws IllegalArgumentException
+	 *             if no factory is registered for the type.
+	 * @since 1.29
+	 */
+	public List<BackgroundJobStatus<?>> scheduleDurable(String type, List<Properties> properties) throws IOException {
+		final JobJournal journal = requireJournal();
+		final List<BackgroundJobWithProperties<?>> jobs = new ArrayList<BackgroundJobWithProperties<?>>(properties.size());
+		final List<String> ids = new ArrayList<String>(properties.size());
+		for (Properties p : properties) {
+			jobs.add(journal.createJob(type, p));
+			ids.add(UUID.randomUUID().toString());
+		}
+		journal.submitted(ids, type, properties);
+		final List<BackgroundJobStatus<?>> scheduled = new ArrayList<BackgroundJobStatus<?>>(jobs.size());
+		for (int i = 0; i < jobs.size(); i++) {
+			scheduled.add(schedule(ids.get(i), jobs.get(i)));
+		}
+		return scheduled;
+	}
+
+	/**
+	 * Schedule the durable jobs that were waiting when the journal was last
+	 * closed. Jobs that had already started are not run again, since they
+	 * may have done part of their work; they are recorded as aborted and
+	 * returned, so the application can deal with them. Only the first call
+	 * for a journal recovers anything.
+	 *
+	 * @return the jobs that were interrupted while executing.
+	 * @throws IllegalStateException
+	 *             if no journal is set.
+	 * @throws IllegalArgumentException
+	 *             if no factory is registered for the type of a waiting job.
+	 *             Nothing is recovered then.
+	 * @since 1.29
+	 */
+	public List<JobJournal.RecoveredJob> recover() {
+		final JobJournal journal = requireJournal();
+		final List<JobJournal.RecoveredJob> unfinished = journal.takeUnfinishedJobs();
+		final List<JobJournal.RecoveredJob> interrupted = new ArrayList<JobJournal.RecoveredJob>();
+		final LinkedHashMap<String, BackgroundJobWithProperties<?>> pending = new LinkedHashMap<String, BackgroundJobWithProperties<?>>();
+		// create all jobs first, so that a missing factory changes nothing
+		for (JobJournal.RecoveredJob job : unfinished) {
+			if (job.isPending()) {
+				pending.put(job.getId(), journal.createJob(job.getType(), job.getProperties()));
+			} else {
+				interrupted.add(job);
+			}
+		}
+		for (Map.Entry<String, BackgroundJobWithProperties<?>> job : pending.entrySet()) {
+			schedule(job.getKey(), job.getValue());
+		}
+		for (JobJournal.RecoveredJob job : interrupted) {
+			try {
+				journal.stateChanged(job.getId(), State.ABORTED);
+			} catch (IOException e) {
+				// then it is recovered as interrupted again next time
+			}
+		}
+		return interrupted;
+	}
+
+	private JobJournal requireJournal() {
+		final JobJournal journal = this.journal;
+		if (journal == null) {
+			throw new IllegalStateException("no journal set");
+		}
+		return journal;
+	}
+
 	@Deprecated
 	public <T> BackgroundJobStatus<T> scheduldeImmediately(BackgroundJob<T> job) {
 		// typo fix (kept for API)
@@ -158,8 +317,9 @@ public class BackgroundJobScheduler implements Runnable {
 		return scheduledJob;
 	}
 
-	private synchronized <T> void schedule(ScheduledJob<T> scheduledJob) {
-		scheduledJob.addJobListener(new JobListener() {
+	private <T> void schedule(ScheduledJob<T> scheduledJob) {
+		// only state changes, progress never reaches the scheduler
+		scheduledJob.setSchedulerListener(new JobListener() {
 
 			@Override
 			public void stateChanged(JobEvent e) {
@@ -171,20 +331,27 @@ public class BackgroundJobScheduler implements Runnable {
 				;
 			}
 		});
+		metrics.jobSubmitted(scheduledJob);
+		JobFlightRecorder.submitted(scheduledJob);
+		// before it can run, so that it is known when it finishes
+		registry.register(scheduledJob);
 		synchronized (this) {
+			scheduledJob.setProgressCoalescing(progressEventInterval, progressEventUnits);
+			scheduledJob.setDispatcher(listenerDispatcher);
 			idle = false;
 			queue.add(scheduledJob);
-			scheduledJobs.put(scheduledJob.getId(), scheduledJob);
+			queueDepth = queue.size();
 			notifyAll();
 		}
 
 	}
 
+	/**
+	 * @return a snapshot of all jobs that are waiting, running, or finished
+	 *         and still retained, in the order they were scheduled.
+	 */
 	public Collection<BackgroundJobStatus<?>> getJobs() {
-		synchronized (this) {
-			return scheduledJobs.values();
-		}
-
+		return registry.snapshot();
 	}
 
 	public synchronized boolean isIdle() {
@@ -207,35 +374,197 @@ public class BackgroundJobScheduler implements Runnable {
 				thread.join();
 			}
 			// abort all remaining jobs
-			while (!queue.isEmpty()) {
-				final ScheduledJob<?> job = (ScheduledJob<?>) queue.take();
+			final List<BackgroundJobStatus<?>> remaining;
+			synchronized (this) {
+				remaining = queue.drain();
+				queueDepth = 0;
+			}
+			final JobJournal journal = this.journal;
+			for (BackgroundJobStatus<?> job : remaining) {
+				if (journal != null) {
+					// durable jobs stay pending, to be recovered
+					journal.detach(job.getId());
+				}
 				job.abort();
 			}
 		}
 	}
 
-	public BackgroundJobStatus<?> getJob(String id) {
+	/**
+	 * Abort all jobs matching the given predicate.
+	 * <br>
+	 * <br>
+	 * Meant for mass cancellation: matching jobs that are still waiting are
+	 * taken out of the queue in one go, without blocking
+	 * {@link #schedule(BackgroundJob)} for each of them. Matching jobs that
+	 * have already been started are aborted as well.
+	 *
+	 * @param predicate
+	 *            selects the jobs to abort. It is not called while holding
+	 *            any scheduler lock.
+	 * @return the number of jobs that were aborted.
+	 * @since 1.29
+	 */
+	public int abortAll(Predicate<? super BackgroundJobInfo> predicate) {
+		final List<BackgroundJobStatus<?>> waiting;
 		synchronized (this) {
-			return scheduledJobs.get(id);
+			waiting = queue.snapshot();
+		}
+		final List<BackgroundJobStatus<?>> known = registry.snapshot();
+		final List<BackgroundJobStatus<?>> matching = new ArrayList<BackgroundJobStatus<?>>();
+		for (BackgroundJobStatus<?> job : waiting) {
+			if (predicate.test(job)) {
+				matching.add(job);
+			}
+		}
+		final List<BackgroundJobStatus<?>> removed;
+		synchronized (this) {
+			removed = queue.removeAll(matching);
+			queueDepth = queue.size();
+		}
+		int count = 0;
+		for (BackgroundJobStatus<?> job : removed) {
+			// leaves SCHEDULED, so removing it from the queue again is a no-op
+			job.abort();
+			count++;
 		}
+		for (BackgroundJobStatus<?> job : known) {
+			switch (job.getState()) {
+				case SCHEDULED:
+					// taken from the queue by executeNext() but not started yet;
+					// it will not start once aborted
+				case STARTING:
+				case RUNNING:
+					if (predicate.test(job)) {
+						job.abort();
+						count++;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		return count;
+	}
+
+	public BackgroundJobStatus<?> getJob(String id) {
+		return registry.get(id);
+	}
 
+	/**
+	 * The last lines logged by a job that is waiting, running, or finished
+	 * and still known (see {@link #setJobsToKeep(int)}). Lines are only kept
+	 * if the job's log was created by a {@link TailBackgroundJobLogFactory}
+	 * (see {@link #setJobLogFactory(BackgroundJobLogFactory)}).
+	 *
+	 * @param id
+	 *            the id of the job.
+	 * @param n
+	 *            the number of lines.
+	 * @return the last <code>n</code> lines (or less) of the job, oldest
+	 *         first; empty if the job is not known or its lines are not
+	 *         kept.
+	 * @see TailBackgroundJobLogFactory#getTail(String, int)
+	 * @since 1.29
+	 */
+	public List<TailBackgroundJobLogFactory.LogLine> getLogTail(String id, int n) {
+		final BackgroundJobLogFactory factory = registry.getLogFactory(id);
+		return factory instanceof TailBackgroundJobLogFactory ? ((TailBackgroundJobLogFactory) factory).getTail(id, n)
+				: Collections.<TailBackgroundJobLogFactory.LogLine> emptyList();
+	}
+
+	/**
+	 * Follow the log of a job, like {@link #getLogTail(String, int)}.
+	 *
+	 * @param id
+	 *            the id of the job.
+	 * @param cursor
+	 *            the sequence of the last line already seen, 0 at first.
+	 * @param max
+	 *            the maximum number of lines to return.
+	 * @return the retained lines after the cursor, oldest first.
+	 * @see TailBackgroundJobLogFactory#getLinesAfter(String, long, int)
+	 * @since 1.29
+	 */
+	public List<TailBackgroundJobLogFactory.LogLine> getLogLinesAfter(String id, long cursor, int max) {
+		final BackgroundJobLogFactory factory = registry.getLogFactory(id);
+		return factory instanceof TailBackgroundJobLogFactory
+				? ((TailBackgroundJobLogFactory) factory).getLinesAfter(id, cursor, max)
+				: Collections.<TailBackgroundJobLogFactory.LogLine> emptyList();
 	}
 
 	protected void jobStateChanged(JobEvent e) {
+		final JobJournal journal = this.journal;
+		if (journal != null) {
+			try {
+				// waits for RUNNING to be synced, outside the job's state lock
+				journal.stateChanged(e.getSource().getId(), e.getNewState());
+			} catch (IOException ex) {
+				if (e.getNewState() == State.RUNNING) {
+					// it would not be recovered correctly
+					((ScheduledJob<?>) e.getSource()).failBeforeWork(ex);
+				} else {
+					final Thread t = Thread.currentThread();
+					t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+				}
+			}
+		}
 		if (e.getOldState() == State.SCHEDULED) {
 			synchronized (this) {
-				queue.remove(e.getSource());
-				oldIds.addLast(e.getSource().getId());
-				if (oldIds.size() > jobsToKeep) {
-					String id = oldIds.removeFirst();
-					scheduledJobs.remove(id);
+				// O(1), the entry is skipped once it comes up
+				queue.remove((BackgroundJobStatus<?>) e.getSource());
+				queueDepth = queue.size();
+			}
+			if (e.getNewState() == State.STARTING) {
+				final BackgroundJobInfo job = e.getSource();
+				final long queueWait = job.getStateTimestamp(State.STARTING) - job.getStateTimestamp(State.SCHEDULED);
+				metrics.jobStarted(job, queueWait);
+				JobFlightRecorder.dequeued(job, queueWait);
+			}
+		}
+		if (FINAL_STATES.contains(e.getNewState())) {
+			recordFinished(e.getSource(), e.getNewState());
+			final JobHistory history = this.jobHistory;
+			if (history != null) {
+				history.record(e.getSource());
+			}
+			synchronized (this) {
+				// only jobs that actually occupied a worker slot give one back
+				if (e.getOldState() != State.SCHEDULED) {
+					activeJobs--;
 				}
+				idle = queue.isEmpty() && activeJobs == 0;
+				notifyAll();
 			}
+			// retire finished jobs only, so that running jobs are never
+			// evicted no matter how many of them there are
+			registry.retire((ScheduledJob<?>) e.getSource());
 		}
-		if(Arrays.asList(State.ABORTED,State.FAILED,State.SUCCEEDED).contains(e.getNewState())){
-			idle = queue.isEmpty();
+
+	}
+
+	private void recordFinished(BackgroundJobInfo job, State state) {
+		final long end = job.getStateTimestamp(state);
+		final long running = job.getStateTimestamp(State.RUNNING);
+		long aborting = job.getStateTimestamp(State.ABORTING_STARTING);
+		if (aborting == 0) {
+			aborting = job.getStateTimestamp(State.ABORTING);
 		}
+		final long started = job.getStateTimestamp(State.STARTING);
+		final long executionTime = running == 0 ? -1 : end - running;
+		final long abortingTime = aborting == 0 ? -1 : end - aborting;
+		metrics.jobFinished(job, state, executionTime, abortingTime);
+		JobFlightRecorder.finished(job, state, (started == 0 ? end : started) - job.getStateTimestamp(State.SCHEDULED),
+				executionTime, abortingTime);
+	}
 
+	/**
+	 * @return counters and latency histograms of this scheduler. They can be
+	 *         read at any time without blocking the scheduler.
+	 * @since 1.29
+	 */
+	public SchedulerMetrics getMetrics() {
+		return metrics;
 	}
 
 	@Override
@@ -249,16 +578,40 @@ public class BackgroundJobScheduler implements Runnable {
 		}
 	}
 
-	protected synchronized BackgroundJobStatus<?> executeNext() throws InterruptedException {
-		final ScheduledJob<?> job;
-		while (queue.isEmpty()) {
-			wait(1000);
-		}
-		job = (ScheduledJob<?>) queue.take();
-		this.idle = false;
-		job.execute();
-
-		job.join(0);
+	/**
+	 * Start the next job from the queue.
+	 *
+	 * Blocks until a job is queued and one of the {@link #getParallelism()}
+	 * worker slots is free. The slot is given back once the job reaches a
+	 * final state, so this method returns right after the job was started.
+	 *
+	 * @return the job that was started.
+	 * @throws InterruptedException
+	 */
+	protected BackgroundJobStatus<?> executeNext() throws InterruptedException {
+		ScheduledJob<?> job;
+		do {
+			synchronized (this) {
+				while (queue.isEmpty() || activeJobs >= parallelism) {
+					wait(1000);
+				}
+				job = (ScheduledJob<?>) queue.poll();
+				queueDepth = queue.size();
+				activeJobs++;
+				this.idle = false;
+			}
+			// never call into the job while holding the scheduler lock: its
+			// listeners (including ours) are notified from within.
+			if (!job.execute()) {
+				// aborted after we took it from the queue
+				synchronized (this) {
+					activeJobs--;
+					idle = queue.isEmpty() && activeJobs == 0;
+					notifyAll();
+				}
+				job = null;
+			}
+		} while (job == null);
 
 		return job;
 	}
@@ -279,11 +632,271 @@ public class BackgroundJobScheduler implements Runnable {
 		this.futureFactory = futureFactory;
 	}
 
+	/**
+	 * @return the maximum number of finished jobs to retain.
+	 */
 	public int getJobsToKeep() {
-		return jobsToKeep;
+		return registry.getMaxCount();
 	}
 
+	/**
+	 * Set the maximum number of finished jobs to retain. When there are more,
+	 * the ones that finished first are forgotten. Jobs that are waiting or
+	 * running are always kept.
+	 *
+	 * @param jobsToKeep
+	 *            the maximum number of finished jobs to retain.
+	 */
 	public void setJobsToKeep(int jobsToKeep) {
-		this.jobsToKeep = jobsToKeep;
+		registry.setMaxCount(jobsToKeep);
+	}
+
+	/**
+	 * @return the maximum number of results of finished jobs to keep.
+	 * @since 1.29
+	 */
+	public int getResultsToKeep() {
+		return registry.getMaxResults();
+	}
+
+	/**
+	 * Set how many results of finished jobs to keep. Finished jobs are
+	 * retained as compact summaries (see {@link #setJobsToKeep(int)}), but
+	 * only the results (or failures) of the jobs that finished last stay
+	 * available through {@link #getJob(String)}; for older ones
+	 * {@link BackgroundJobStatus#result()} throws an
+	 * {@link IllegalStateException}. The handle returned by
+	 * {@link #schedule(BackgroundJob)} always keeps its result. The default
+	 * is 5. See also {@link #setResultRetentionBytes(long)}.
+	 *
+	 * @param resultsToKeep
+	 *            the maximum number of results to keep, 0 to keep none.
+	 * @since 1.29
+	 */
+	public void setResultsToKeep(int resultsToKeep) {
+		registry.setMaxResults(resultsToKeep);
+	}
+
+	/**
+	 * @return the maximum estimated heap size of all kept results in bytes,
+	 *         0 for no limit.
+	 * @since 1.29
+	 */
+	public long getResultRetentionBytes() {
+		return registry.getMaxResultBytes();
+	}
+
+	/**
+	 * Drop the oldest kept results once they take up more than the given
+	 * amount of heap, in addition to {@link #setResultsToKeep(int)}. A
+	 * result larger than the limit is not kept at all. The size of a result
+	 * is estimated by the weigher (see {@link #setResultWeigher(ToLongFunction)}).
+	 * The default is no limit.
+	 *
+	 * @param bytes
+	 *            the maximum estimated size of all kept results, 0 for no
+	 *            limit.
+	 * @since 1.29
+	 */
+	public void setResultRetentionBytes(long bytes) {
+		registry.setMaxResultBytes(bytes);
+	}
+
+	/**
+	 * Set how the size of a result (or failure) is estimated for
+	 * {@link #setResultRetentionBytes(long)}. The default counts strings and
+	 * primitive arrays exactly, but collections, maps and object arrays only
+	 * by their number of elements and any other object as a constant; jobs
+	 * returning large object graphs should supply their own estimate. The
+	 * weigher is called once per finished job, when its result is stored,
+	 * and must not throw.
+	 *
+	 * @param weigher
+	 *            the estimated size in bytes of a result or failure (never
+	 *            called with <code>null</code>), or <code>null</code> for
+	 *            the default.
+	 * @since 1.29
+	 */
+	public void setResultWeigher(ToLongFunction<Object> weigher) {
+		registry.setResultWeigher(weigher);
+	}
+
+	/**
+	 * @return milliseconds a finished job is retained at most, 0 for no
+	 *         limit.
+	 * @since 1.29
+	 */
+	public long getJobRetentionTime() {
+		return registry.getMaxAge();
+	}
+
+	/**
+	 * Forget finished jobs after the given time, in addition to
+	 * {@link #setJobsToKeep(int)}. The default is no limit.
+	 *
+	 * @param millis
+	 *            milliseconds a finished job is retained at most, 0 for no
+	 *            limit.
+	 * @since 1.29
+	 */
+	public void setJobRetentionTime(long millis) {
+		registry.setMaxAge(millis);
+	}
+
+	/**
+	 * @return the maximum estimated heap size of all retained finished jobs
+	 *         in bytes, 0 for no limit.
+	 * @since 1.29
+	 */
+	public long getJobRetentionBytes() {
+		return registry.getMaxBytes();
+	}
+
+	/**
+	 * Forget finished jobs once they take up more than the given amount of
+	 * heap, in addition to {@link #setJobsToKeep(int)}. The size of a job is
+	 * a rough estimate of its summary based on its id and description; its
+	 * result is not included (see {@link #setResultsToKeep(int)}). The
+	 * default is no limit.
+	 *
+	 * @param bytes
+	 *            the maximum estimated size of all retained finished jobs,
+	 *            0 for no limit.
+	 * @since 1.29
+	 */
+	public void setJobRetentionBytes(long bytes) {
+		registry.setMaxBytes(bytes);
+	}
+
+	/**
+	 * @return milliseconds a waiting job needs to gain one priority level.
+	 * @see BackgroundJob#getPriority()
+	 * @since 1.29
+	 */
+	public synchronized long getAgingInterval() {
+		return queue.getAgingInterval();
+	}
+
+	/**
+	 * Set how fast waiting jobs age. A job that has been waiting for one
+	 * interval is started before a job of the next higher priority that
+	 * was scheduled just now. The default is one minute; use a very large
+	 * value to get (almost) strict priorities. Only affects jobs scheduled
+	 * afterwards.
+	 *
+	 * @param agingInterval
+	 *            milliseconds a waiting job needs to gain one priority level.
+	 * @see BackgroundJob#getPriority()
+	 * @since 1.29
+	 */
+	public synchronized void setAgingInterval(long agingInterval) {
+		queue.setAgingInterval(agingInterval);
+	}
+
+	/**
+	 * @return the maximum number of jobs executed side by side.
+	 * @since 1.29
+	 */
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Set the number of worker slots, i.e. the maximum number of jobs that
+	 * may be running at the same time. The default is 1, which executes the
+	 * queued jobs strictly one after another.
+	 *
+	 * @param parallelism
+	 *            the number of worker slots, at least 1.
+	 * @since 1.29
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1, was " + parallelism);
+		}
+		this.parallelism = parallelism;
+		notifyAll();
+	}
+
+	/**
+	 * @return the minimum time in milliseconds between two progress events
+	 *         of a job, 0 if not limited.
+	 * @since 1.29
+	 */
+	public synchronized long getProgressEventInterval() {
+		return progressEventInterval;
+	}
+
+	/**
+	 * Rate-limit progress events. A job's {@link JobListener}s are then
+	 * notified about progress at most once per interval, always with the
+	 * latest values; progress held back is delivered once the interval has
+	 * passed even if the job does not report again, and before the next
+	 * state change at the latest. State changes are not affected. Only
+	 * applies to jobs scheduled afterwards.
+	 *
+	 * @param progressEventInterval
+	 *            minimum milliseconds between two progress events of a job, 0
+	 *            (the default) to notify on every report.
+	 * @since 1.29
+	 */
+	public synchronized void setProgressEventInterval(long progressEventInterval) {
+		this.progressEventInterval = progressEventInterval;
+	}
+
+	/**
+	 * @return the minimum progress (in units of work) between two progress
+	 *         events of a job, 0 if not limited.
+	 * @since 1.29
+	 */
+	public synchronized int getProgressEventUnits() {
+		return progressEventUnits;
+	}
+
+	/**
+	 * Notify about progress only once a job advanced by at least the given
+	 * number of units since the previous progress event. May be combined
+	 * with {@link #setProgressEventInterval(long)}: an event is delivered as
+	 * soon as either threshold is reached. Only applies to jobs scheduled
+	 * afterwards.
+	 *
+	 * @param progressEventUnits
+	 *            minimum units of work between two progress events of a job,
+	 *            0 (the default) to notify on every report.
+	 * @since 1.29
+	 */
+	public synchronized void setProgressEventUnits(int progressEventUnits) {
+		this.progressEventUnits = progressEventUnits;
+	}
+
+	/**
+	 * @return the dispatcher delivering job events to listeners, or
+	 *         <code>null</code> if they are notified inline.
+	 * @since 1.29
+	 */
+	public synchronized JobEventDispatcher getListenerDispatcher() {
+		return listenerDispatcher;
+	}
+
+	/**
+	 * Deliver the events of jobs scheduled afterwards to their
+	 * {@link JobListener}s through the given dispatcher, so that slow
+	 * listeners hold up neither the jobs nor the scheduler.
+	 *
+	 * @param listenerDispatcher
+	 *            the dispatcher, or <code>null</code> (the default) to notify
+	 *            listeners inline.
+	 * @since 1.29
+	 */
+	public synchronized void setListenerDispatcher(JobEventDispatcher listenerDispatcher) {
+		this.listenerDispatcher = listenerDispatcher;
+	}
+
+	/**
+	 * @return the number of jobs currently occupying a worker slot.
+	 * @since 1.29
+	 */
+	public synchronized int getActiveJobs() {
+		return activeJobs;
 	}
 }
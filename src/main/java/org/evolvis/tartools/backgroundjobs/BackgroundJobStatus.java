@@ -53,9 +53,14 @@ public interface BackgroundJobStatus<T> extends BackgroundJobInfo {
 
     /**
      * Join the thread executing the job.
+     * <br>
+     * <br>
+     * Returns as soon as the job has stopped executing code, i.e. once it
+     * has finished or, if it was aborted before it was started, right away.
      * 
      * @param timeout
-     *            the maximum number of milliseconds to wait for the job.
+     *            the maximum number of milliseconds to wait for the job. A
+     *            timeout of 0 means to wait forever.
      * @throws InterruptedException
      */
     public void join(long timeout) throws InterruptedException;
@@ -82,5 +87,24 @@ public interface BackgroundJobStatus<T> extends BackgroundJobInfo {
 
     void addJobListener(JobListener l);
 
+    /**
+     * Add a listener that is only notified about the given kinds of events.
+     * <br>
+     * <br>
+     * Subscribing to {@link JobEvent.Type#STATE_CHANGED} only is much
+     * cheaper for jobs reporting progress at a high rate: no progress event
+     * is even created unless someone listens to it. Implementations that do
+     * not distinguish notify the listener about all events.
+     *
+     * @param l
+     *            the listener.
+     * @param types
+     *            the kinds of events to deliver to the listener.
+     * @since 1.29
+     */
+    default void addJobListener(JobListener l, JobEvent.Type... types) {
+        addJobListener(l);
+    }
+
     void removeJobListener(JobListener l);
 }
@@ -53,6 +53,26 @@ BackgroundJobStatus<T> {
         return getDelegatee().getWorkTotal();
     }
 
+    @Override
+    public long getWorkDoneLong() {
+        return getDelegatee().getWorkDoneLong();
+    }
+
+    @Override
+    public long getWorkTotalLong() {
+        return getDelegatee().getWorkTotalLong();
+    }
+
+    @Override
+    public double getThroughput() {
+        return getDelegatee().getThroughput();
+    }
+
+    @Override
+    public long getEstimatedTimeRemaining() {
+        return getDelegatee().getEstimatedTimeRemaining();
+    }
+
     @Override
     public void abort() {
         getDelegatee().abort();
@@ -89,6 +109,11 @@ BackgroundJobStatus<T> {
 
     }
 
+    @Override
+    public void addJobListener(final JobListener l, final JobEvent.Type... types) {
+        getDelegatee().addJobListener(l, types);
+    }
+
     @Override
     public void removeJobListener(final JobListener l) {
         getDelegatee().removeJobListener(l);
@@ -105,6 +130,16 @@ BackgroundJobStatus<T> {
         return getDelegatee().getStartTime();
     }
 
+    @Override
+    public int getPriority() {
+        return getDelegatee().getPriority();
+    }
+
+    @Override
+    public long getStateTimestamp(State state) {
+        return getDelegatee().getStateTimestamp(state);
+    }
+
     protected BackgroundJobStatus<T> getDelegatee() {
         return delegatee;
     }
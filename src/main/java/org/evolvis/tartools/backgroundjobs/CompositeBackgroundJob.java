@@ -32,13 +32,18 @@ import java.util.List;
 
 public class CompositeBackgroundJob implements BackgroundJob<List<?>> {
 
+    /**
+     * @deprecated the composite reports through {@link AggregateProgress}
+     *             now, which does not overflow for large totals.
+     */
+    @Deprecated
     public class SubJobMonitor implements BackgroundJobMonitor {
 
         private final BackgroundJobMonitor monitor;
         private final int anteilVomGanzen;
         private int subTotal;
 
-        private int itemCount = 0;
+        private long itemCount = 0;
 
         public SubJobMonitor(final BackgroundJobMonitor monitor, final int anteilVomGanzen) {
             this.monitor = monitor;
@@ -76,8 +81,8 @@ public class CompositeBackgroundJob implements BackgroundJob<List<?>> {
             if (subTotal == 0) {
                 monitor.reportProgressAbsolute(progressOffset);
             } else {
-                monitor.reportProgressAbsolute(progressOffset + itemCount
-                        * anteilVomGanzen / subTotal);
+                monitor.reportProgressAbsolute(progressOffset + (int) Math.min(anteilVomGanzen, itemCount
+                        * anteilVomGanzen / subTotal));
             }
         }
 
@@ -106,16 +111,20 @@ public class CompositeBackgroundJob implements BackgroundJob<List<?>> {
             total += getWeight(step);
         }
 
-        monitor.announceTotal(total * 100);
-        for (final BackgroundJob<?> step : steps) {
+        final AggregateProgress progress = new AggregateProgress(monitor, total * 100);
+        final AggregateProgress.Part[] parts = new AggregateProgress.Part[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            parts[i] = progress.newPart(getWeight(steps[i]));
+        }
+        for (int i = 0; i < steps.length; i++) {
             if (monitor.isAborting()) {
                 break;
             }
-            currentStep = step;
-            final int anteilVomGanzen = 100 * getWeight(step);
-            arrayList.add(step
-                    .work(new SubJobMonitor(monitor, anteilVomGanzen)));
-            progressOffset += anteilVomGanzen;
+            currentStep = steps[i];
+            arrayList.add(steps[i].work(parts[i]));
+            // shows with the next report, as the composite always did
+            parts[i].markDone();
+            progressOffset += 100 * getWeight(steps[i]);
         }
 
         return arrayList;
@@ -0,0 +1,186 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * What is left of a finished job once it was released: an immutable summary
+ * of its information, with the outcome looked up in a {@link ResultCache}.
+ * Takes a few hundred bytes no matter how big the job or its result are.
+ */
+final class FinishedJob<T> implements BackgroundJobStatus<T> {
+	private static final State[] STATES = State.values();
+
+	private final String id;
+	private final String description;
+	private final Class<?> jobClass;
+	private final State state;
+	private final long workDone;
+	private final long workTotal;
+	private final long startTime;
+	private final long lastModified;
+	private final long[] stateTimestamps;
+	private final int priority;
+	private final boolean visible;
+	private final boolean cancellationSupported;
+	private final long seq;
+	private final ResultCache results;
+
+	FinishedJob(ScheduledJob<T> job, long seq, ResultCache results) {
+		this.id = job.getId();
+		this.description = job.getDescription();
+		this.jobClass = job.getJobClass();
+		this.state = job.getState();
+		this.workDone = job.getWorkDoneLong();
+		this.workTotal = job.getWorkTotalLong();
+		this.startTime = job.getStartTime();
+		this.lastModified = job.getLastModified();
+		this.stateTimestamps = new long[STATES.length];
+		for (State s : STATES) {
+			stateTimestamps[s.ordinal()] = job.getStateTimestamp(s);
+		}
+		this.priority = job.getPriority();
+		this.visible = job.isVisible();
+		this.cancellationSupported = job.isCancellationSupported();
+		this.seq = seq;
+		this.results = results;
+	}
+
+	@Override
+	public State getState() {
+		return state;
+	}
+
+	@Override
+	public int getWorkDone() {
+		return WorkUnits.toInt(workDone, workTotal);
+	}
+
+	@Override
+	public int getWorkTotal() {
+		return WorkUnits.toInt(workTotal, workTotal);
+	}
+
+	@Override
+	public long getWorkDoneLong() {
+		return workDone;
+	}
+
+	@Override
+	public long getWorkTotalLong() {
+		return workTotal;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public Class<?> getJobClass() {
+		return jobClass;
+	}
+
+	@Override
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	@Override
+	public long getStartTime() {
+		return startTime;
+	}
+
+	@Override
+	public long getStateTimestamp(State state) {
+		return stateTimestamps[state.ordinal()];
+	}
+
+	@Override
+	public boolean isVisible() {
+		return visible;
+	}
+
+	@Override
+	public boolean isCancellationSupported() {
+		return cancellationSupported;
+	}
+
+	@Override
+	public int getPriority() {
+		return priority;
+	}
+
+	@Override
+	public void abort() {
+		// already done, nothing to abort
+	}
+
+	@Override
+	public void join(long timeout) {
+		// already done
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the outcome of the job is no longer cached.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T result() throws ExecutionException {
+		final ResultCache.Outcome outcome = results.get(id, seq);
+		if (outcome == null) {
+			throw new IllegalStateException("the result of job " + id + " is no longer available");
+		}
+		if (outcome.failure instanceof CancellationException) {
+			throw (CancellationException) outcome.failure;
+		}
+		if (outcome.failure != null) {
+			throw new ExecutionException(outcome.failure);
+		}
+		return (T) outcome.result;
+	}
+
+	@Override
+	public void addJobListener(JobListener l) {
+		// there will be no more events
+	}
+
+	@Override
+	public void removeJobListener(JobListener l) {
+		;
+	}
+}
@@ -32,11 +32,33 @@ import java.util.EventObject;
 import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
 
 public class JobEvent extends EventObject {
-	private static final long serialVersionUID = 5647512299253073261L;
-	private final int workDone;
-	private final int workTotal;
+	/**
+	 * The kind of a {@link JobEvent}, see
+	 * {@link BackgroundJobStatus#addJobListener(JobListener, Type...)}.
+	 *
+	 * @since 1.29
+	 */
+	public enum Type {
+		/**
+		 * The job changed its {@link State}, delivered to
+		 * {@link JobListener#stateChanged(JobEvent)}.
+		 */
+		STATE_CHANGED,
+		/**
+		 * The job reported progress, delivered to
+		 * {@link JobListener#progressInfoUpdated(JobEvent)}. Old and new state
+		 * are both the current state.
+		 */
+		PROGRESS_UPDATED
+	}
+
+	private static final long serialVersionUID = -2270719582317428606L;
+	private final Type type;
+	private final long workDone;
+	private final long workTotal;
 	private final State oldState;
 	private final State newState;
+	private final long timestamp;
 
 	@Override
 	public BackgroundJobInfo getSource() {
@@ -45,24 +67,53 @@ public class JobEvent extends EventObject {
 
 	public JobEvent(BackgroundJobInfo source) {
 		super(source);
-		workDone = source.getWorkDone();
-		workTotal = source.getWorkTotal();
+		type = Type.PROGRESS_UPDATED;
+		workDone = source.getWorkDoneLong();
+		workTotal = source.getWorkTotalLong();
 		oldState = newState = source.getState();
+		timestamp = System.nanoTime();
 	}
 
 	public JobEvent(BackgroundJobInfo source, State oldState, State newState) {
 		super(source);
+		type = Type.STATE_CHANGED;
 		this.oldState = oldState;
 		this.newState = newState;
-		workDone = source.getWorkDone();
-		workTotal = source.getWorkTotal();
+		workDone = source.getWorkDoneLong();
+		workTotal = source.getWorkTotalLong();
+		final long entered = source.getStateTimestamp(newState);
+		timestamp = entered != 0 ? entered : System.nanoTime();
+	}
+
+	/**
+	 * @return the kind of this event.
+	 * @since 1.29
+	 */
+	public Type getType() {
+		return type;
 	}
 
 	public int getWorkDone() {
-		return workDone;
+		return WorkUnits.toInt(workDone, workTotal);
 	}
 
 	public int getWorkTotal() {
+		return WorkUnits.toInt(workTotal, workTotal);
+	}
+
+	/**
+	 * @see BackgroundJobInfo#getWorkDoneLong()
+	 * @since 1.29
+	 */
+	public long getWorkDoneLong() {
+		return workDone;
+	}
+
+	/**
+	 * @see BackgroundJobInfo#getWorkTotalLong()
+	 * @since 1.29
+	 */
+	public long getWorkTotalLong() {
 		return workTotal;
 	}
 
@@ -73,4 +124,16 @@ public class JobEvent extends EventObject {
 	public State getNewState() {
 		return newState;
 	}
+
+	/**
+	 * @return the {@link System#nanoTime()} at which the job entered the new
+	 *         state, or for progress events, at which the event was created.
+	 *         Unlike the time of delivery, this is not delayed by listeners
+	 *         or an asynchronous dispatcher.
+	 * @see BackgroundJobInfo#getStateTimestamp(State)
+	 * @since 1.29
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
 }
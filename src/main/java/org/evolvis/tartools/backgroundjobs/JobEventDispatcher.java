@@ -0,0 +1,350 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers {@link JobEvent}s to {@link JobListener}s on an executor instead of
+ * on the thread that caused them.
+ * <br>
+ * <br>
+ * Without a dispatcher, listeners run inline: on the job's own thread for
+ * progress, on the scheduler thread when a job is started and on the caller's
+ * thread for {@link BackgroundJobStatus#abort()}. A slow listener then holds
+ * up whatever that thread was doing. Install a dispatcher with
+ * {@link BackgroundJobScheduler#setListenerDispatcher(JobEventDispatcher)} to
+ * decouple them. The scheduler's own bookkeeping is not affected, it always
+ * runs inline.
+ * <br>
+ * <br>
+ * Events of one job are delivered one at a time and in the order in which
+ * they occurred; events of different jobs may be delivered concurrently. At
+ * most <code>capacity</code> events are buffered across all jobs; what
+ * happens when the buffer is full is decided by the {@link OverflowPolicy}.
+ * If the executor rejects a delivery, e.g. because it was shut down, the
+ * events are delivered on the thread that produced them instead.
+ *
+ * @since 1.29
+ */
+public class JobEventDispatcher {
+
+	public enum OverflowPolicy {
+		/**
+		 * The thread producing the event waits until there is room again.
+		 * Listeners running on the dispatcher never wait, to avoid
+		 * deadlocking it.
+		 */
+		BLOCK,
+		/**
+		 * Progress events are dropped, state changes wait like with
+		 * {@link #BLOCK}. Since every progress event carries the complete
+		 * progress, listeners only miss intermediate values.
+		 */
+		DROP_PROGRESS,
+		/**
+		 * Any event is dropped, including state changes.
+		 */
+		DROP
+	}
+
+	/** the events of one job, delivered in order */
+	static final class Lane {
+		private final ConcurrentLinkedQueue<Delivery> deliveries = new ConcurrentLinkedQueue<Delivery>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+	}
+
+	private static final class Delivery {
+		final Iterable<JobListener> listeners;
+		final JobEvent event;
+		final long enqueued = System.nanoTime();
+
+		Delivery(Iterable<JobListener> listeners, JobEvent event) {
+			this.listeners = listeners;
+			this.event = event;
+		}
+	}
+
+	/** deliveries per turn, before giving other jobs a chance */
+	private static final int BATCH = 64;
+
+	private static final ThreadLocal<Boolean> DISPATCHING = new ThreadLocal<Boolean>();
+
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private final int capacity;
+	private final OverflowPolicy policy;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private volatile int blocked = 0;
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder totalLag = new LongAdder();
+	private final AtomicLong maxLag = new AtomicLong();
+
+	/**
+	 * Create a dispatcher with its own pool of daemon threads.
+	 *
+	 * @param threads
+	 *            number of delivery threads.
+	 * @param capacity
+	 *            maximum number of buffered events.
+	 * @param policy
+	 *            what to do when the buffer is full.
+	 */
+	public JobEventDispatcher(int threads, int capacity, OverflowPolicy policy) {
+		this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "BackgroundJob Listener-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		}), capacity, policy, true);
+	}
+
+	/**
+	 * Create a dispatcher that delivers events on the given executor.
+	 *
+	 * @param executor
+	 *            the executor, managed by the caller.
+	 * @param capacity
+	 *            maximum number of buffered events.
+	 * @param policy
+	 *            what to do when the buffer is full.
+	 */
+	public JobEventDispatcher(Executor executor, int capacity, OverflowPolicy policy) {
+		this(executor, capacity, policy, false);
+	}
+
+	private JobEventDispatcher(Executor executor, int capacity, OverflowPolicy policy, boolean own) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1, was " + capacity);
+		}
+		this.executor = executor;
+		this.ownExecutor = own ? (ExecutorService) executor : null;
+		this.capacity = capacity;
+		this.policy = policy;
+	}
+
+	Lane createLane() {
+		return new Lane();
+	}
+
+	/**
+	 * Queue an event for delivery to the given listeners. The listeners are
+	 * iterated at the time of delivery.
+	 */
+	void dispatch(final Lane lane, final Iterable<JobListener> listeners, final JobEvent event) {
+		if (!reserve(event.getType() == JobEvent.Type.PROGRESS_UPDATED)) {
+			dropped.increment();
+			return;
+		}
+		lane.deliveries.add(new Delivery(listeners, event));
+		schedule(lane);
+	}
+
+	private boolean reserve(final boolean progress) {
+		while (true) {
+			final int q = queued.get();
+			if (q < capacity) {
+				if (queued.compareAndSet(q, q + 1)) {
+					return true;
+				}
+				continue;
+			}
+			if (policy == OverflowPolicy.DROP || (policy == OverflowPolicy.DROP_PROGRESS && progress)) {
+				return false;
+			}
+			if (DISPATCHING.get() != null) {
+				// a listener causing events must not wait for itself
+				queued.incrementAndGet();
+				return true;
+			}
+			synchronized (this) {
+				blocked++;
+				try {
+					while (queued.get() >= capacity) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					// do not lose the event, but keep the interrupt
+					Thread.currentThread().interrupt();
+					queued.incrementAndGet();
+					return true;
+				} finally {
+					blocked--;
+				}
+			}
+		}
+	}
+
+	private void release() {
+		queued.decrementAndGet();
+		if (blocked > 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	private void schedule(final Lane lane) {
+		while (lane.scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						if (drain(lane)) {
+							schedule(lane);
+						}
+					}
+				});
+				return;
+			} catch (RejectedExecutionException e) {
+				// rather late than never, and the lane must not stay claimed
+				if (!drain(lane)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deliver a batch of the lane's events.
+	 *
+	 * @return whether more events are waiting.
+	 */
+	private boolean drain(final Lane lane) {
+		// also called inline, possibly from a listener of another lane
+		final boolean nested = DISPATCHING.get() != null;
+		DISPATCHING.set(Boolean.TRUE);
+		try {
+			Delivery d;
+			int n = 0;
+			while (n++ < BATCH && (d = lane.deliveries.poll()) != null) {
+				release();
+				deliver(d);
+			}
+		} finally {
+			if (!nested) {
+				DISPATCHING.remove();
+			}
+			lane.scheduled.set(false);
+		}
+		return !lane.deliveries.isEmpty();
+	}
+
+	private void deliver(final Delivery d) {
+		final long lag = System.nanoTime() - d.enqueued;
+		totalLag.add(lag);
+		maxLag.accumulateAndGet(lag, Math::max);
+		for (final JobListener listener : d.listeners) {
+			try {
+				if (d.event.getType() == JobEvent.Type.PROGRESS_UPDATED) {
+					listener.progressInfoUpdated(d.event);
+				} else {
+					listener.stateChanged(d.event);
+				}
+			} catch (RuntimeException | Error e) {
+				failed.increment();
+				final Thread t = Thread.currentThread();
+				t.getUncaughtExceptionHandler().uncaughtException(t, e);
+			}
+		}
+		delivered.increment();
+	}
+
+	/**
+	 * @return the number of events currently waiting for delivery.
+	 */
+	public int getQueuedEvents() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of events delivered so far.
+	 */
+	public long getDeliveredEvents() {
+		return delivered.sum();
+	}
+
+	/**
+	 * @return the number of events dropped because the buffer was full.
+	 */
+	public long getDroppedEvents() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of listener calls that threw an exception.
+	 */
+	public long getListenerFailures() {
+		return failed.sum();
+	}
+
+	/**
+	 * @return the mean time in nanoseconds between an event occurring and
+	 *         its delivery starting.
+	 */
+	public long getMeanDispatchLag() {
+		final long count = delivered.sum();
+		return count == 0 ? 0 : totalLag.sum() / count;
+	}
+
+	/**
+	 * @return the maximum time in nanoseconds between an event occurring and
+	 *         its delivery starting.
+	 */
+	public long getMaxDispatchLag() {
+		return maxLag.get();
+	}
+
+	/**
+	 * Shut down the delivery threads if this dispatcher created them. Events
+	 * already queued are still delivered.
+	 */
+	public void shutdown() {
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+}
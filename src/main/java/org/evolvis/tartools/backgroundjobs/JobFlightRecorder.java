@@ -0,0 +1,237 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+
+/**
+ * Java Flight Recorder events of the job life cycle.
+ * <br>
+ * <br>
+ * All events are in the category "Background Jobs" and named
+ * <code>org.evolvis.tartools.backgroundjobs.*</code>. Like the JDK's own
+ * events they cost next to nothing unless a recording enables them, so they
+ * are always emitted.
+ */
+final class JobFlightRecorder {
+	private static final String CATEGORY = "Background Jobs";
+
+	@Name("org.evolvis.tartools.backgroundjobs.JobSubmitted")
+	@Label("Job Submitted")
+	@Category(CATEGORY)
+	@Description("A job was handed to the scheduler")
+	@StackTrace(false)
+	static class JobSubmitted extends Event {
+		@Label("Job Id")
+		String jobId;
+		@Label("Job Class")
+		Class<?> jobClass;
+		@Label("Description")
+		String description;
+		@Label("Priority")
+		int priority;
+	}
+
+	@Name("org.evolvis.tartools.backgroundjobs.JobDequeued")
+	@Label("Job Dequeued")
+	@Category(CATEGORY)
+	@Description("A job was taken from the queue and is about to start")
+	@StackTrace(false)
+	static class JobDequeued extends Event {
+		@Label("Job Id")
+		String jobId;
+		@Label("Job Class")
+		Class<?> jobClass;
+		@Label("Queue Wait")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueWait;
+	}
+
+	@Name("org.evolvis.tartools.backgroundjobs.JobExecution")
+	@Label("Job Execution")
+	@Category(CATEGORY)
+	@Description("A job running its work, recorded on the thread executing it")
+	@StackTrace(false)
+	static class JobExecution extends Event {
+		@Label("Job Id")
+		String jobId;
+		@Label("Job Class")
+		Class<?> jobClass;
+		@Label("Description")
+		String description;
+		@Label("Final State")
+		String state;
+		@Label("Work Done")
+		long workDone;
+	}
+
+	@Name("org.evolvis.tartools.backgroundjobs.JobFinished")
+	@Label("Job Finished")
+	@Category(CATEGORY)
+	@Description("A job reached a final state")
+	@StackTrace(false)
+	static class JobFinished extends Event {
+		@Label("Job Id")
+		String jobId;
+		@Label("Job Class")
+		Class<?> jobClass;
+		@Label("State")
+		String state;
+		@Label("Queue Wait")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueWait;
+		@Label("Execution Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long executionTime;
+		@Label("Aborting Time")
+		@Description("Time from the abort request until the job stopped")
+		@Timespan(Timespan.NANOSECONDS)
+		long abortingTime;
+	}
+
+	@Name("org.evolvis.tartools.backgroundjobs.JobProgress")
+	@Label("Job Progress")
+	@Category(CATEGORY)
+	@Description("Sampled progress of a running job")
+	@StackTrace(false)
+	@Period("1 s")
+	static class JobProgress extends Event {
+		@Label("Job Id")
+		String jobId;
+		@Label("Job Class")
+		Class<?> jobClass;
+		@Label("State")
+		String state;
+		@Label("Work Done")
+		long workDone;
+		@Label("Work Total")
+		long workTotal;
+	}
+
+	/** jobs currently executing, sampled by {@link JobProgress} */
+	private static final Set<BackgroundJobInfo> RUNNING = ConcurrentHashMap.newKeySet();
+
+	static {
+		FlightRecorder.addPeriodicEvent(JobProgress.class, JobFlightRecorder::sampleProgress);
+	}
+
+	private JobFlightRecorder() {
+	}
+
+	private static void sampleProgress() {
+		for (BackgroundJobInfo job : RUNNING) {
+			final JobProgress event = new JobProgress();
+			event.jobId = job.getId();
+			event.jobClass = job.getJobClass();
+			event.state = job.getState().name();
+			event.workDone = job.getWorkDoneLong();
+			event.workTotal = job.getWorkTotalLong();
+			event.commit();
+		}
+	}
+
+	static void submitted(BackgroundJobInfo job) {
+		final JobSubmitted event = new JobSubmitted();
+		if (event.isEnabled()) {
+			event.jobId = job.getId();
+			event.jobClass = job.getJobClass();
+			event.description = job.getDescription();
+			event.priority = job.getPriority();
+			event.commit();
+		}
+	}
+
+	static void dequeued(BackgroundJobInfo job, long queueWait) {
+		final JobDequeued event = new JobDequeued();
+		if (event.isEnabled()) {
+			event.jobId = job.getId();
+			event.jobClass = job.getJobClass();
+			event.queueWait = queueWait;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Call on the executing thread right before the job's work.
+	 *
+	 * @return the event to pass to {@link #executionEnded(JobExecution, BackgroundJobInfo)}.
+	 */
+	static JobExecution executionStarted(BackgroundJobInfo job) {
+		RUNNING.add(job);
+		final JobExecution event = new JobExecution();
+		event.begin();
+		return event;
+	}
+
+	static void executionEnded(JobExecution event, BackgroundJobInfo job) {
+		RUNNING.remove(job);
+		event.end();
+		if (event.shouldCommit()) {
+			event.jobId = job.getId();
+			event.jobClass = job.getJobClass();
+			event.description = job.getDescription();
+			event.state = job.getState().name();
+			event.workDone = job.getWorkDoneLong();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param executionTime
+	 *            nanoseconds, negative if the job never ran.
+	 * @param abortingTime
+	 *            nanoseconds, negative if the job was not aborted while running.
+	 */
+	static void finished(BackgroundJobInfo job, State state, long queueWait, long executionTime, long abortingTime) {
+		final JobFinished event = new JobFinished();
+		if (event.isEnabled()) {
+			event.jobId = job.getId();
+			event.jobClass = job.getJobClass();
+			event.state = state.name();
+			event.queueWait = queueWait;
+			// shown as "N/A" by the JFR tools
+			event.executionTime = executionTime < 0 ? Long.MIN_VALUE : executionTime;
+			event.abortingTime = abortingTime < 0 ? Long.MIN_VALUE : abortingTime;
+			event.commit();
+		}
+	}
+}
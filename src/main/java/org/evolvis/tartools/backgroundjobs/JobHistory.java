@@ -0,0 +1,415 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+
+/**
+ * A rolling history of finished jobs in a memory-mapped file, see
+ * {@link BackgroundJobScheduler#setJobHistory(JobHistory)}.
+ * <br>
+ * <br>
+ * Every finished job takes one fixed-size record ({@value #RECORD_SIZE}
+ * bytes) holding its id, job class, final state, work counters, wall clock
+ * times of scheduling and completion, and the time at which it entered each
+ * state. Once the file is full, the oldest records are overwritten. Ids are
+ * cut to {@value #ID_BYTES} and job class names to their last
+ * {@value #CLASS_BYTES} bytes.
+ * <br>
+ * <br>
+ * Queries scan the file in place through a reused {@link Entry}, so even
+ * millions of records can be searched without filling the heap. Appending
+ * and querying may happen concurrently; an entry that is overwritten while
+ * being visited is detected by {@link Entry#isValid()}.
+ *
+ * @since 1.29
+ */
+public class JobHistory implements JobListener, Closeable {
+	public static final int RECORD_SIZE = 192;
+	public static final int ID_BYTES = 36;
+	public static final int CLASS_BYTES = 48;
+
+	private static final int MAGIC = 0x4a6f6248; // "JobH"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_VERSION = 4;
+	private static final int HEADER_CAPACITY = 8;
+	private static final int HEADER_NEXT = 16;
+
+	private static final int SEQ = 0;
+	private static final int FINISHED_AT = 8;
+	private static final int SCHEDULED_AT = 16;
+	private static final int OFFSETS = 24;
+	private static final int WORK_DONE = OFFSETS + 8 * 8;
+	private static final int WORK_TOTAL = WORK_DONE + 8;
+	private static final int STATE = WORK_TOTAL + 8;
+	private static final int ID_LENGTH = STATE + 1;
+	private static final int CLASS_LENGTH = ID_LENGTH + 1;
+	private static final int ID = CLASS_LENGTH + 2;
+	private static final int CLASS = ID + ID_BYTES;
+
+	private static final State[] STATES = State.values();
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * A view of one record. Instances are reused while scanning; copy what
+	 * you need before returning from the consumer.
+	 */
+	public final class Entry {
+		private int position;
+		private long seq;
+
+		Entry() {
+		}
+
+		private boolean moveTo(long seq) {
+			this.position = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+			this.seq = seq;
+			return (long) LONGS.getAcquire(buffer, position + SEQ) == seq;
+		}
+
+		/**
+		 * @return <code>false</code> if the record was overwritten in the
+		 *         meantime, so that values read from it may be garbage.
+		 */
+		public boolean isValid() {
+			VarHandle.acquireFence();
+			return (long) LONGS.getAcquire(buffer, position + SEQ) == seq;
+		}
+
+		/**
+		 * @return the number of the record, counting from 1 for the first
+		 *         job ever recorded in the file.
+		 */
+		public long getSequence() {
+			return seq;
+		}
+
+		public String getId() {
+			return string(ID, buffer.get(position + ID_LENGTH) & 0xff);
+		}
+
+		/**
+		 * @return the name of the job class, cut to its last
+		 *         {@value JobHistory#CLASS_BYTES} bytes.
+		 */
+		public String getJobClassName() {
+			return string(CLASS, buffer.get(position + CLASS_LENGTH) & 0xff);
+		}
+
+		/**
+		 * Compare the job class without creating any objects.
+		 */
+		public boolean isJobClass(Class<?> jobClass) {
+			return matches(className(jobClass));
+		}
+
+		private boolean matches(byte[] name) {
+			if ((buffer.get(position + CLASS_LENGTH) & 0xff) != name.length) {
+				return false;
+			}
+			for (int i = 0; i < name.length; i++) {
+				if (buffer.get(position + CLASS + i) != name[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public State getState() {
+			return STATES[buffer.get(position + STATE)];
+		}
+
+		public long getWorkDone() {
+			return buffer.getLong(position + WORK_DONE);
+		}
+
+		public long getWorkTotal() {
+			return buffer.getLong(position + WORK_TOTAL);
+		}
+
+		/**
+		 * @return when the job was scheduled, in milliseconds since the epoch.
+		 */
+		public long getScheduledAt() {
+			return buffer.getLong(position + SCHEDULED_AT);
+		}
+
+		/**
+		 * @return when the job finished, in milliseconds since the epoch.
+		 */
+		public long getFinishedAt() {
+			return buffer.getLong(position + FINISHED_AT);
+		}
+
+		/**
+		 * @return nanoseconds from scheduling until the job entered the given
+		 *         state, -1 if it never did.
+		 */
+		public long getStateOffset(State state) {
+			return buffer.getLong(position + OFFSETS + 8 * state.ordinal());
+		}
+
+		/**
+		 * @return nanoseconds the job waited to be started, -1 if it never was.
+		 */
+		public long getQueueWait() {
+			return getStateOffset(State.STARTING);
+		}
+
+		/**
+		 * @return nanoseconds from {@link State#RUNNING} to the final state,
+		 *         -1 if the job never ran.
+		 */
+		public long getExecutionTime() {
+			final long running = getStateOffset(State.RUNNING);
+			return running < 0 ? -1 : getStateOffset(getState()) - running;
+		}
+
+		private String string(int offset, int length) {
+			final byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = buffer.get(position + offset + i);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final AtomicLong next;
+
+	/**
+	 * Open (or create) a history file.
+	 *
+	 * @param file
+	 *            the history file.
+	 * @param capacity
+	 *            the number of jobs to keep. Must match the capacity of an
+	 *            existing file.
+	 * @throws IOException
+	 *             if the file cannot be mapped or was created with a
+	 *             different capacity.
+	 */
+	public JobHistory(Path file, int capacity) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+		if (size > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IllegalArgumentException("capacity too large for a single mapping");
+		}
+		final boolean created = channel.size() == 0;
+		// validate before mapping, which would grow a file of another size
+		if (!created && !isHistory(channel, size, capacity)) {
+			channel.close();
+			throw new IOException(file + " is not a job history of capacity " + capacity);
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		if (created) {
+			buffer.putInt(HEADER_VERSION, VERSION);
+			buffer.putInt(HEADER_CAPACITY, capacity);
+			buffer.putLong(HEADER_NEXT, 1);
+			buffer.putInt(HEADER_MAGIC, MAGIC);
+		}
+		next = new AtomicLong(buffer.getLong(HEADER_NEXT));
+	}
+
+	private static boolean isHistory(FileChannel channel, long size, int capacity) throws IOException {
+		if (channel.size() != size) {
+			return false;
+		}
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				return false;
+			}
+		}
+		return header.getInt(HEADER_MAGIC) == MAGIC && header.getInt(HEADER_VERSION) == VERSION
+				&& header.getInt(HEADER_CAPACITY) == capacity;
+	}
+
+	/**
+	 * @return the number of jobs kept at most.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of jobs recorded since the file was created,
+	 *         including those that have been overwritten.
+	 */
+	public long getRecordCount() {
+		return next.get() - 1;
+	}
+
+	/**
+	 * Record a finished job.
+	 */
+	public void record(BackgroundJobInfo job) {
+		final long seq = next.getAndIncrement();
+		final int position = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+		// invalidate first, so that readers never mistake a half-written record
+		LONGS.setRelease(buffer, position + SEQ, 0L);
+		VarHandle.storeStoreFence();
+		final State state = job.getState();
+		final long scheduled = job.getStateTimestamp(State.SCHEDULED);
+		buffer.putLong(position + FINISHED_AT, System.currentTimeMillis());
+		buffer.putLong(position + SCHEDULED_AT, job.getStartTime());
+		for (State s : STATES) {
+			final long timestamp = job.getStateTimestamp(s);
+			buffer.putLong(position + OFFSETS + 8 * s.ordinal(),
+					s == State.SCHEDULED ? 0 : timestamp == 0 || scheduled == 0 ? -1 : timestamp - scheduled);
+		}
+		buffer.putLong(position + WORK_DONE, job.getWorkDoneLong());
+		buffer.putLong(position + WORK_TOTAL, job.getWorkTotalLong());
+		buffer.put(position + STATE, (byte) state.ordinal());
+		final byte[] id = job.getId().getBytes(StandardCharsets.UTF_8);
+		final int idLength = Math.min(id.length, ID_BYTES);
+		buffer.put(position + ID_LENGTH, (byte) idLength);
+		for (int i = 0; i < idLength; i++) {
+			buffer.put(position + ID + i, id[i]);
+		}
+		final byte[] name = className(job.getJobClass());
+		buffer.put(position + CLASS_LENGTH, (byte) name.length);
+		for (int i = 0; i < name.length; i++) {
+			buffer.put(position + CLASS + i, name[i]);
+		}
+		LONGS.setRelease(buffer, position + SEQ, seq);
+		// only ever grows, concurrent appends may finish out of order
+		long recorded;
+		while ((recorded = (long) LONGS.getAcquire(buffer, HEADER_NEXT)) < seq + 1) {
+			if (LONGS.compareAndSet(buffer, HEADER_NEXT, recorded, seq + 1)) {
+				break;
+			}
+		}
+	}
+
+	private static byte[] className(Class<?> jobClass) {
+		final byte[] name = (jobClass == null ? "" : jobClass.getName()).getBytes(StandardCharsets.UTF_8);
+		if (name.length <= CLASS_BYTES) {
+			return name;
+		}
+		final byte[] tail = new byte[CLASS_BYTES];
+		System.arraycopy(name, name.length - CLASS_BYTES, tail, 0, CLASS_BYTES);
+		return tail;
+	}
+
+	/**
+	 * Visit the recorded jobs, oldest first.
+	 *
+	 * @param from
+	 *            only jobs finished at or after this time (milliseconds since
+	 *            the epoch).
+	 * @param to
+	 *            only jobs finished before this time (milliseconds since the
+	 *            epoch).
+	 * @param jobClass
+	 *            only jobs of this class, or <code>null</code> for all.
+	 * @param state
+	 *            only jobs in this final state, or <code>null</code> for all.
+	 * @param consumer
+	 *            called for every matching job, with a reused {@link Entry}.
+	 * @return the number of matching jobs.
+	 */
+	public int query(long from, long to, Class<?> jobClass, State state, Consumer<? super Entry> consumer) {
+		final byte[] name = jobClass == null ? null : className(jobClass);
+		final Entry entry = new Entry();
+		final long last = next.get() - 1;
+		int matches = 0;
+		for (long seq = Math.max(1, last - capacity + 1); seq <= last; seq++) {
+			if (!entry.moveTo(seq)) {
+				// overwritten, or not yet completely written
+				continue;
+			}
+			final long finishedAt = entry.getFinishedAt();
+			if (finishedAt < from || finishedAt >= to || state != null && entry.getState() != state
+					|| name != null && !entry.matches(name) || !entry.isValid()) {
+				continue;
+			}
+			consumer.accept(entry);
+			matches++;
+		}
+		return matches;
+	}
+
+	/**
+	 * Records every job reaching a final state.
+	 */
+	@Override
+	public void stateChanged(JobEvent e) {
+		switch (e.getNewState()) {
+			case SUCCEEDED:
+			case FAILED:
+			case ABORTED:
+				record(e.getSource());
+				break;
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public void progressInfoUpdated(JobEvent e) {
+		;
+	}
+
+	/**
+	 * Write everything to disk.
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
@@ -0,0 +1,587 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+
+/**
+ * An append-only journal of durable jobs, see
+ * {@link BackgroundJobScheduler#setJournal(JobJournal)}.
+ * <br>
+ * <br>
+ * Durable jobs are {@link BackgroundJobWithProperties} created by a factory
+ * registered for their type, so that they can be rebuilt from the type and
+ * properties after a restart. The journal records their submission and
+ * every state change. A submission returns once it is on disk; records of
+ * concurrent submitters are written and synced together (group commit), so
+ * the number of syncs does not grow with the number of submissions. A job
+ * only starts working once the change to {@link State#RUNNING} is on disk
+ * as well, so a job recovered as not having started really did not; a job
+ * recovered as started may have finished just before the crash; if the
+ * change to RUNNING cannot be written, the job fails without working. Other
+ * state changes are written in the same batches but nobody waits for them;
+ * if they cannot be queued, the failure goes to the uncaught exception
+ * handler of the thread changing the state.
+ * <br>
+ * <br>
+ * The journal is rewritten with just the jobs that did not finish when it
+ * is opened and whenever it has grown past the
+ * {@link #setCompactionThreshold(long) compaction threshold}, so it keeps
+ * from growing both across restarts and in a long-running JVM. A torn
+ * record at the end (from a crash while writing) is ignored.
+ *
+ * @since 1.29
+ */
+public class JobJournal implements Closeable {
+	private static final byte SUBMITTED = 1;
+	private static final byte STATE_CHANGED = 2;
+	private static final int MAX_BATCH = 4096;
+	private static final Record CLOSE = new Record(null, null, null, null);
+
+	/**
+	 * A job found in the journal that did not finish before the journal was
+	 * last closed (or the JVM died).
+	 */
+	public static class RecoveredJob {
+		private final String id;
+		private final String type;
+		private final Properties properties;
+		private State lastState;
+
+		RecoveredJob(String id, String type, Properties properties) {
+			this.id = id;
+			this.type = type;
+			this.properties = properties;
+			this.lastState = State.SCHEDULED;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public Properties getProperties() {
+			return properties;
+		}
+
+		/**
+		 * @return the last state recorded for the job.
+		 */
+		public State getLastState() {
+			return lastState;
+		}
+
+		/**
+		 * @return <code>true</code> if the job had not started executing, so
+		 *         it can safely be run again. Since the change to
+		 *         {@link State#RUNNING} is synced before the job's work
+		 *         starts, a job that did any work is never pending.
+		 */
+		public boolean isPending() {
+			return lastState == State.SCHEDULED || lastState == State.STARTING;
+		}
+	}
+
+	private static final class Record {
+		final String id;
+		/** the new state, null for a submission */
+		final State state;
+		final byte[] data;
+		/** completed once the record is on disk, null if nobody waits */
+		final CompletableFuture<Void> synced;
+
+		Record(String id, State state, byte[] data, CompletableFuture<Void> synced) {
+			this.id = id;
+			this.state = state;
+			this.data = data;
+			this.synced = synced;
+		}
+	}
+
+	private final Path file;
+	/** replaced by compaction, only used by the writer thread after the constructor */
+	private FileChannel channel;
+	/** the submission and latest state record of each unfinished job, kept by the writer thread */
+	private final Map<String, byte[][]> liveRecords = new LinkedHashMap<String, byte[][]>();
+	private long liveBytes;
+	private long fileSize;
+	private volatile long compactionThreshold = 16 * 1024 * 1024;
+	private final Map<String, Supplier<? extends BackgroundJobWithProperties<?>>> factories = new ConcurrentHashMap<String, Supplier<? extends BackgroundJobWithProperties<?>>>();
+	/** ids of jobs submitted and not yet finished */
+	private final Set<String> live = ConcurrentHashMap.newKeySet();
+	private final List<RecoveredJob> unfinished;
+	private final AtomicBoolean recovered = new AtomicBoolean();
+	private final LinkedBlockingQueue<Record> records = new LinkedBlockingQueue<Record>();
+	private final Thread writer;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * Open (or create) a journal and compact it.
+	 *
+	 * @param file
+	 *            the journal file.
+	 * @throws IOException
+	 */
+	public JobJournal(Path file) throws IOException {
+		this.file = file;
+		unfinished = Collections.unmodifiableList(new ArrayList<RecoveredJob>(read(file).values()));
+		for (RecoveredJob job : unfinished) {
+			track(new Record(job.getId(), null, frame(submittedRecord(job.getId(), job.getType(), job.getProperties())), null));
+			if (job.getLastState() != State.SCHEDULED) {
+				track(new Record(job.getId(), job.getLastState(), frame(stateChangedRecord(job.getId(), job.getLastState())), null));
+			}
+			live.add(job.getId());
+		}
+		channel = compact();
+		writer = new Thread(this::writeLoop, "BackgroundJob Journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return the journal file.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the size in bytes beyond which the journal is compacted.
+	 */
+	public long getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	/**
+	 * Rewrite the journal with just the unfinished jobs once it is larger
+	 * than the given size and at least twice as large as they need. Default
+	 * is 16 MiB.
+	 *
+	 * @param compactionThreshold
+	 *            the size in bytes.
+	 */
+	public void setCompactionThreshold(long compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Register the factory for durable jobs of the given type. Factories
+	 * must be registered before jobs of that type are scheduled or
+	 * recovered.
+	 *
+	 * @param type
+	 *            the type name as passed to
+	 *            {@link BackgroundJobScheduler#scheduleDurable(String, Properties)}.
+	 * @param factory
+	 *            creates a new job, which is then configured with
+	 *            {@link BackgroundJobWithProperties#setProperties(Properties)}.
+	 */
+	public void registerFactory(String type, Supplier<? extends BackgroundJobWithProperties<?>> factory) {
+		factories.put(type, factory);
+	}
+
+	/**
+	 * @return the jobs that had not finished when the journal was opened, in
+	 *         the order they were submitted.
+	 */
+	public List<RecoveredJob> getUnfinishedJobs() {
+		return unfinished;
+	}
+
+	/**
+	 * @return the unfinished jobs on the first call, nothing afterwards.
+	 */
+	List<RecoveredJob> takeUnfinishedJobs() {
+		return recovered.compareAndSet(false, true) ? unfinished : Collections.<RecoveredJob> emptyList();
+	}
+
+	/**
+	 * Stop recording state changes of the given job, so that it is recovered
+	 * in its current state.
+	 */
+	void detach(String id) {
+		live.remove(id);
+	}
+
+	BackgroundJobWithProperties<?> createJob(String type, Properties properties) {
+		final Supplier<? extends BackgroundJobWithProperties<?>> factory = factories.get(type);
+		if (factory == null) {
+			throw new IllegalArgumentException("no factory registered for job type " + type);
+		}
+		final BackgroundJobWithProperties<?> job = factory.get();
+		job.setProperties(properties);
+		return job;
+	}
+
+	/**
+	 * Record the submission of a job and wait until it is on disk.
+	 */
+	void submitted(String id, String type, Properties properties) throws IOException {
+		submitted(Collections.singletonList(id), type, Collections.singletonList(properties));
+	}
+
+	/**
+	 * Record the submission of several jobs and wait until they are all on
+	 * disk, which takes a single sync.
+	 */
+	void submitted(List<String> ids, String type, List<Properties> properties) throws IOException {
+		final CompletableFuture<Void> synced = new CompletableFuture<Void>();
+		final List<Record> batch = new ArrayList<Record>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			// records are synced in order, so waiting for the last one will do
+			batch.add(new Record(ids.get(i), null, frame(submittedRecord(ids.get(i), type, properties.get(i))),
+					i == ids.size() - 1 ? synced : null));
+		}
+		live.addAll(ids);
+		try {
+			enqueue(batch);
+			await(synced);
+		} catch (IOException e) {
+			live.removeAll(ids);
+			throw e;
+		}
+	}
+
+	/**
+	 * Record a state change of a job, if it is durable. Waits until it is on
+	 * disk for {@link State#RUNNING}, so that the job's work does not start
+	 * before.
+	 *
+	 * @throws IOException
+	 *             if the journal is closed or failed, or, for
+	 *             {@link State#RUNNING}, the record could not be synced.
+	 */
+	void stateChanged(String id, State state) throws IOException {
+		final boolean finished = state == State.SUCCEEDED || state == State.FAILED || state == State.ABORTED;
+		if (finished ? !live.remove(id) : !live.contains(id)) {
+			return;
+		}
+		final CompletableFuture<Void> synced = state == State.RUNNING ? new CompletableFuture<Void>() : null;
+		enqueue(Collections.singletonList(new Record(id, state, frame(stateChangedRecord(id, state)), synced)));
+		if (synced != null) {
+			await(synced);
+		}
+	}
+
+	private static void await(CompletableFuture<Void> synced) throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					synced.get();
+					return;
+				} catch (InterruptedException e) {
+					// the record is queued anyway, do not report it lost
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private synchronized void enqueue(List<Record> batch) throws IOException {
+		// synchronized, so that nothing is queued behind CLOSE and batches stay together
+		if (closed) {
+			throw new IOException("journal is closed");
+		}
+		final IOException f = failure;
+		if (f != null) {
+			throw new IOException("journal failed", f);
+		}
+		records.addAll(batch);
+	}
+
+	private void writeLoop() {
+		final List<Record> batch = new ArrayList<Record>();
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		boolean closing = false;
+		while (!closing) {
+			try {
+				batch.add(records.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			records.drainTo(batch, MAX_BATCH - 1);
+			buffer.clear();
+			for (Record record : batch) {
+				if (record == CLOSE) {
+					closing = true;
+					continue;
+				}
+				if (buffer.remaining() < record.data.length) {
+					final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + record.data.length));
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+				buffer.put(record.data);
+				track(record);
+			}
+			buffer.flip();
+			IOException error = failure;
+			if (error == null) {
+				try {
+					fileSize += buffer.remaining();
+					writeFully(channel, buffer);
+					// one sync for the whole batch
+					channel.force(false);
+					if (fileSize > compactionThreshold && fileSize > 2 * liveBytes) {
+						channel.close();
+						channel = compact();
+					}
+				} catch (IOException e) {
+					failure = error = e;
+				}
+			}
+			for (Record record : batch) {
+				if (record.synced != null) {
+					if (error == null) {
+						record.synced.complete(null);
+					} else {
+						record.synced.completeExceptionally(error);
+					}
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Write all pending records and close the file. State changes of jobs
+	 * that are still running are not recorded any more, so they will be
+	 * recovered as interrupted.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			records.add(CLOSE);
+		}
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Keep the records needed to rewrite the journal.
+	 */
+	private void track(Record record) {
+		if (record.state == null) {
+			liveRecords.put(record.id, new byte[][] { record.data, null });
+			liveBytes += record.data.length;
+			return;
+		}
+		final byte[][] job = liveRecords.get(record.id);
+		if (job == null) {
+			return;
+		}
+		if (job[1] != null) {
+			liveBytes -= job[1].length;
+		}
+		if (record.state == State.SUCCEEDED || record.state == State.FAILED || record.state == State.ABORTED) {
+			liveRecords.remove(record.id);
+			liveBytes -= job[0].length;
+		} else {
+			job[1] = record.data;
+			liveBytes += record.data.length;
+		}
+	}
+
+	/**
+	 * Replace the journal with one holding just the unfinished jobs.
+	 *
+	 * @return the new journal, open for appending.
+	 */
+	private FileChannel compact() throws IOException {
+		final Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (byte[][] job : liveRecords.values()) {
+				writeFully(out, job[0]);
+				if (job[1] != null) {
+					writeFully(out, job[1]);
+				}
+			}
+			out.force(true);
+		}
+		Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		final FileChannel compactedChannel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		fileSize = compactedChannel.size();
+		return compactedChannel;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, byte[] data) throws IOException {
+		writeFully(channel, ByteBuffer.wrap(data));
+	}
+
+	private static byte[] submittedRecord(String id, String type, Properties properties) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(SUBMITTED);
+		out.writeUTF(id);
+		out.writeUTF(type);
+		final Set<String> names = properties.stringPropertyNames();
+		out.writeInt(names.size());
+		for (String name : names) {
+			out.writeUTF(name);
+			out.writeUTF(properties.getProperty(name));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] stateChangedRecord(String id, State state) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(STATE_CHANGED);
+		out.writeUTF(id);
+		out.writeUTF(state.name());
+		return bytes.toByteArray();
+	}
+
+	/** length, CRC32 and payload */
+	private static byte[] frame(byte[] payload) {
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+		return ByteBuffer.allocate(8 + payload.length).putInt(payload.length).putInt((int) crc.getValue()).put(payload)
+				.array();
+	}
+
+	private static Map<String, RecoveredJob> read(Path file) throws IOException {
+		final Map<String, RecoveredJob> jobs = new LinkedHashMap<String, RecoveredJob>();
+		if (!Files.exists(file)) {
+			return jobs;
+		}
+		try (InputStream stream = Files.newInputStream(file);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+			while (true) {
+				final byte[] payload;
+				try {
+					final int length = in.readInt();
+					final int checksum = in.readInt();
+					if (length < 0 || length > 16 * 1024 * 1024) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+					final CRC32 crc = new CRC32();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) {
+						break;
+					}
+				} catch (EOFException e) {
+					// torn write at the end
+					break;
+				}
+				final DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+				final byte kind = record.readByte();
+				final String id = record.readUTF();
+				if (kind == SUBMITTED) {
+					final String type = record.readUTF();
+					final Properties properties = new Properties();
+					for (int i = record.readInt(); i > 0; i--) {
+						properties.setProperty(record.readUTF(), record.readUTF());
+					}
+					jobs.put(id, new RecoveredJob(id, type, properties));
+				} else if (kind == STATE_CHANGED) {
+					final State state = State.valueOf(record.readUTF());
+					final RecoveredJob job = jobs.get(id);
+					if (job == null) {
+						continue;
+					}
+					if (state == State.SUCCEEDED || state == State.FAILED || state == State.ABORTED) {
+						jobs.remove(id);
+					} else {
+						job.lastState = state;
+					}
+				}
+			}
+		}
+		return jobs;
+	}
+}
@@ -0,0 +1,206 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The queue of jobs waiting to be started.
+ * <br>
+ * <br>
+ * Jobs are ordered by priority with aging: a job that has been waiting for
+ * <code>n</code> aging intervals competes as if its priority was
+ * <code>n</code> levels higher. Since all waiting jobs age at the same rate,
+ * this order never changes while the jobs are waiting, so it can be computed
+ * once when a job is added: the job with the smallest
+ * <code>submitTime - priority * agingInterval</code> comes first; ties go to
+ * the job that was added first.
+ * <br>
+ * <br>
+ * Adding and taking a job are O(log n). Removing a job is O(1): it is only
+ * marked as removed and skipped when it comes up; the heap is compacted once
+ * more than half of it consists of removed entries. This class is not
+ * thread-safe; the scheduler guards it with its own lock.
+ */
+class JobQueue {
+	private static final class Entry implements Comparable<Entry> {
+		final BackgroundJobStatus<?> job;
+		final long key;
+		final long seq;
+		boolean removed = false;
+
+		Entry(BackgroundJobStatus<?> job, long key, long seq) {
+			this.job = job;
+			this.key = key;
+			this.seq = seq;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			if (key != o.key) {
+				return key < o.key ? -1 : 1;
+			}
+			return Long.compare(seq, o.seq);
+		}
+	}
+
+	private PriorityQueue<Entry> entries = new PriorityQueue<Entry>();
+	/** the entries that have not been removed */
+	private final HashMap<BackgroundJobStatus<?>, Entry> index = new HashMap<BackgroundJobStatus<?>, Entry>();
+	private long agingInterval;
+	private long seq = 0;
+
+	/**
+	 * @param agingInterval
+	 *            milliseconds a job has to wait to gain one priority level.
+	 */
+	JobQueue(long agingInterval) {
+		setAgingInterval(agingInterval);
+	}
+
+	long getAgingInterval() {
+		return agingInterval;
+	}
+
+	/**
+	 * Only affects jobs added afterwards.
+	 */
+	void setAgingInterval(long agingInterval) {
+		if (agingInterval <= 0) {
+			throw new IllegalArgumentException("aging interval must be positive, was " + agingInterval);
+		}
+		this.agingInterval = agingInterval;
+	}
+
+	void add(BackgroundJobStatus<?> job) {
+		final long now = System.nanoTime() / 1000000L;
+		final long boost;
+		final long max = Long.MAX_VALUE / 4;
+		// saturate instead of overflowing for absurdly large intervals
+		if (agingInterval > max / Math.max(1, Math.abs((long) job.getPriority()))) {
+			boost = job.getPriority() < 0 ? -max : max;
+		} else {
+			boost = job.getPriority() * agingInterval;
+		}
+		final Entry entry = new Entry(job, now - boost, seq++);
+		entries.add(entry);
+		index.put(job, entry);
+	}
+
+	/**
+	 * @return the next job to start, or <code>null</code> if the queue is
+	 *         empty.
+	 */
+	BackgroundJobStatus<?> poll() {
+		Entry entry;
+		do {
+			entry = entries.poll();
+			if (entry == null) {
+				return null;
+			}
+		} while (entry.removed);
+		index.remove(entry.job);
+		return entry.job;
+	}
+
+	boolean remove(BackgroundJobStatus<?> job) {
+		final Entry entry = index.remove(job);
+		if (entry == null) {
+			return false;
+		}
+		entry.removed = true;
+		compactIfNeeded();
+		return true;
+	}
+
+	/**
+	 * Remove the given jobs, compacting at most once.
+	 *
+	 * @return the jobs that actually were in the queue, in the order in which
+	 *         they would have been started.
+	 */
+	List<BackgroundJobStatus<?>> removeAll(Collection<? extends BackgroundJobStatus<?>> jobs) {
+		final ArrayList<Entry> removed = new ArrayList<Entry>();
+		for (BackgroundJobStatus<?> job : jobs) {
+			final Entry entry = index.remove(job);
+			if (entry != null) {
+				entry.removed = true;
+				removed.add(entry);
+			}
+		}
+		compactIfNeeded();
+		return jobsOf(removed);
+	}
+
+	/**
+	 * @return the waiting jobs, in no particular order.
+	 */
+	List<BackgroundJobStatus<?>> snapshot() {
+		return new ArrayList<BackgroundJobStatus<?>>(index.keySet());
+	}
+
+	boolean isEmpty() {
+		return index.isEmpty();
+	}
+
+	int size() {
+		return index.size();
+	}
+
+	/**
+	 * Remove all jobs, in the order in which they would have been started.
+	 */
+	List<BackgroundJobStatus<?>> drain() {
+		final List<BackgroundJobStatus<?>> jobs = jobsOf(new ArrayList<Entry>(index.values()));
+		entries.clear();
+		index.clear();
+		return jobs;
+	}
+
+	private static List<BackgroundJobStatus<?>> jobsOf(List<Entry> entries) {
+		Collections.sort(entries);
+		final ArrayList<BackgroundJobStatus<?>> jobs = new ArrayList<BackgroundJobStatus<?>>(entries.size());
+		for (Entry entry : entries) {
+			jobs.add(entry.job);
+		}
+		return jobs;
+	}
+
+	private void compactIfNeeded() {
+		if (entries.size() > 64 && entries.size() > 2 * index.size()) {
+			// O(n), but only after at least n/2 removals
+			entries = new PriorityQueue<Entry>(index.values());
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * The jobs known to a {@link BackgroundJobScheduler}, by id.
+ * <br>
+ * <br>
+ * Lookups and snapshots never block. Jobs are kept until they are finished;
+ * finished jobs are then retained subject to a maximum count, age and
+ * (estimated) size, oldest first. Limits are checked whenever a job is
+ * registered or finishes and before a snapshot is taken; a finished job
+ * older than the maximum age is never returned by a lookup. One thread
+ * evicts at a time; others find it busy and leave the work to it.
+ * <br>
+ * <br>
+ * Once a retained job has completely finished, it is released (see
+ * {@link ScheduledJob#release()}) and replaced by an immutable
+ * {@link FinishedJob} summary. Its result (or failure) goes to a
+ * {@link ResultCache} of bounded size.
+ */
+final class JobRegistry {
+	/** rough size of a FinishedJob with its timestamps, the entry and the map node */
+	private static final long JOB_OVERHEAD = 256;
+	/** object header, hash and array header of a String */
+	private static final long STRING_OVERHEAD = 40;
+
+	private static final class Entry {
+		/** the ScheduledJob, a FinishedJob once released */
+		volatile BackgroundJobStatus<?> job;
+		final long seq;
+		final long bytes;
+		volatile long retiredAt;
+		/** the factory that created the log, it may keep something for the job */
+		final BackgroundJobLogFactory logFactory;
+
+		Entry(ScheduledJob<?> job, long seq) {
+			this.job = job;
+			this.seq = seq;
+			this.bytes = estimateSize(job);
+			this.logFactory = job.getJobLogFactory();
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry> byId = new ConcurrentHashMap<String, Entry>();
+	private final AtomicLong sequence = new AtomicLong();
+	/** finished jobs in the order they finished */
+	private final ConcurrentLinkedQueue<Entry> retired = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicInteger retainedCount = new AtomicInteger();
+	private final AtomicLong retainedBytes = new AtomicLong();
+	/** set while a thread evicts, so that limits are checked and applied together */
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	/** finished jobs still holding on to their future */
+	private final ConcurrentLinkedQueue<ScheduledJob<?>> unreleased = new ConcurrentLinkedQueue<ScheduledJob<?>>();
+	private volatile int maxCount;
+	private volatile long maxAgeNanos = 0;
+	private volatile long maxBytes = 0;
+
+	private final ResultCache results;
+
+	JobRegistry(int maxCount, int maxResults) {
+		this.maxCount = maxCount;
+		this.results = new ResultCache(maxResults);
+	}
+
+	static long estimateSize(BackgroundJobInfo job) {
+		final String description = job.getDescription();
+		return JOB_OVERHEAD + STRING_OVERHEAD + 2L * job.getId().length()
+				+ (description == null ? 0 : STRING_OVERHEAD + 2L * description.length());
+	}
+
+	void register(ScheduledJob<?> job) {
+		// released right when it is done, not by whoever comes along next
+		job.setDoneListener(this::releaseFinished);
+		final Entry entry = new Entry(job, sequence.incrementAndGet());
+		final Entry replaced = byId.put(job.getId(), entry);
+		if (replaced != null && replaced.logFactory != entry.logFactory) {
+			// the new factory replaces what it kept for the old job itself
+			release(replaced);
+		}
+		expire();
+	}
+
+	/**
+	 * Called once the job reached a final state.
+	 */
+	void retire(ScheduledJob<?> job) {
+		final Entry entry = byId.get(job.getId());
+		if (entry != null && entry.job == job) {
+			entry.retiredAt = System.nanoTime();
+			retired.add(entry);
+			retainedCount.incrementAndGet();
+			retainedBytes.addAndGet(entry.bytes);
+		}
+		unreleased.add(job);
+		expire();
+	}
+
+	BackgroundJobStatus<?> get(String id) {
+		final Entry entry = byId.get(id);
+		if (entry == null || isExpired(entry, System.nanoTime())) {
+			return null;
+		}
+		return entry.job;
+	}
+
+	/**
+	 * @return the factory that creates (or created) the log of the job, or
+	 *         <code>null</code> if the job is not known.
+	 */
+	BackgroundJobLogFactory getLogFactory(String id) {
+		final Entry entry = byId.get(id);
+		if (entry == null || isExpired(entry, System.nanoTime())) {
+			return null;
+		}
+		return entry.logFactory;
+	}
+
+	/**
+	 * @return all jobs in the order they were registered.
+	 */
+	List<BackgroundJobStatus<?>> snapshot() {
+		expire();
+		final List<Entry> entries = new ArrayList<Entry>(byId.values());
+		entries.sort(Comparator.comparingLong(e -> e.seq));
+		final List<BackgroundJobStatus<?>> jobs = new ArrayList<BackgroundJobStatus<?>>(entries.size());
+		for (Entry entry : entries) {
+			jobs.add(entry.job);
+		}
+		return jobs;
+	}
+
+	int size() {
+		return byId.size();
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		final long maxAge = maxAgeNanos;
+		final long retiredAt = entry.retiredAt;
+		return maxAge > 0 && retiredAt != 0 && now - retiredAt > maxAge;
+	}
+
+	private boolean overLimit(long now) {
+		final Entry oldest = retired.peek();
+		if (oldest == null) {
+			return false;
+		}
+		final long bytes = maxBytes;
+		return retainedCount.get() > maxCount || bytes > 0 && retainedBytes.get() > bytes || isExpired(oldest, now);
+	}
+
+	void expire() {
+		final long now = System.nanoTime();
+		// re-checked after the flag is cleared, for jobs retired meanwhile
+		while (overLimit(now) && evicting.compareAndSet(false, true)) {
+			try {
+				while (overLimit(now)) {
+					final Entry entry = retired.poll();
+					if (entry == null) {
+						break;
+					}
+					retainedCount.decrementAndGet();
+					retainedBytes.addAndGet(-entry.bytes);
+					if (byId.remove(entry.job.getId(), entry)) {
+						results.remove(entry.job.getId(), entry.seq);
+						release(entry);
+					}
+				}
+			} finally {
+				evicting.set(false);
+			}
+		}
+		releaseFinished();
+	}
+
+	/**
+	 * Release the finished jobs that are done, skipping those that are not
+	 * yet. A job is in {@link #unreleased} from its final state change on
+	 * and done a little later, so whichever of the two comes last releases
+	 * it.
+	 */
+	private void releaseFinished() {
+		for (Iterator<ScheduledJob<?>> i = unreleased.iterator(); i.hasNext();) {
+			final ScheduledJob<?> job = i.next();
+			if (job.release()) {
+				i.remove();
+				summarize(job);
+			}
+		}
+	}
+
+	/** tells the log factory that the job is forgotten, see BackgroundJobLogFactory#release */
+	private static void release(Entry entry) {
+		if (entry.logFactory != null) {
+			entry.logFactory.release(entry.job.getId());
+		}
+	}
+
+	private <T> void summarize(ScheduledJob<T> job) {
+		final Entry entry = byId.get(job.getId());
+		if (entry == null || entry.job != job) {
+			// forgotten (or replaced) already
+			return;
+		}
+		results.put(job.getId(), entry.seq, job.getReleasedResult(), job.getReleasedFailure());
+		entry.job = new FinishedJob<T>(job, entry.seq, results);
+	}
+
+	int getMaxCount() {
+		return maxCount;
+	}
+
+	void setMaxCount(int maxCount) {
+		this.maxCount = maxCount;
+		expire();
+	}
+
+	int getMaxResults() {
+		return results.getMaxSize();
+	}
+
+	void setMaxResults(int maxResults) {
+		results.setMaxSize(maxResults);
+	}
+
+	long getMaxResultBytes() {
+		return results.getMaxBytes();
+	}
+
+	void setMaxResultBytes(long maxBytes) {
+		results.setMaxBytes(maxBytes);
+	}
+
+	void setResultWeigher(ToLongFunction<Object> weigher) {
+		results.setWeigher(weigher);
+	}
+
+	long getMaxAge() {
+		return TimeUnit.NANOSECONDS.toMillis(maxAgeNanos);
+	}
+
+	void setMaxAge(long maxAgeMillis) {
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+		expire();
+	}
+
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		expire();
+	}
+}
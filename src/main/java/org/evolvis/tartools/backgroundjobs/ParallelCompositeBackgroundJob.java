@@ -0,0 +1,184 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Like {@link CompositeBackgroundJob}, but for independent steps: they are
+ * run concurrently, at most <code>parallelism</code> at a time.
+ * <br>
+ * <br>
+ * The results are returned in the order the steps were given. Progress is
+ * aggregated from all steps according to their weights (see
+ * {@link WeightedBackgroundJob}). As soon as a step fails, the other steps
+ * are cancelled and the exception is rethrown. If the composite job is
+ * aborted, all running steps are interrupted and see
+ * {@link BackgroundJobMonitor#isAborting()}, steps that have not started yet
+ * are skipped, and the results of the steps up to the first unfinished one
+ * are returned.
+ *
+ * @since 1.29
+ */
+public class ParallelCompositeBackgroundJob implements BackgroundJob<List<?>> {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final BackgroundJob<?>[] steps;
+    private final String description;
+    private final int parallelism;
+    private final Set<BackgroundJob<?>> currentSteps = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param description
+     *            the description of the whole job.
+     * @param parallelism
+     *            the maximum number of steps to run at the same time.
+     * @param steps
+     *            the independent steps.
+     */
+    public ParallelCompositeBackgroundJob(final String description, final int parallelism,
+            final BackgroundJob<?>... steps) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.description = description;
+        this.parallelism = parallelism;
+        this.steps = steps;
+    }
+
+    @Override
+    public List<?> work(final BackgroundJobMonitor monitor) throws Exception {
+        int total = 0;
+        for (final BackgroundJob<?> step : steps) {
+            total += getWeight(step);
+        }
+        final AggregateProgress progress = new AggregateProgress(monitor, total * 100);
+        if (steps.length == 0) {
+            return new ArrayList<Object>();
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, steps.length), r -> {
+            final Thread thread = new Thread(r, "BackgroundJob Step-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CompletionService<Object> completion = new ExecutorCompletionService<Object>(pool);
+        final Map<Future<Object>, Integer> indexes = new HashMap<Future<Object>, Integer>();
+        final Object[] results = new Object[steps.length];
+        final boolean[] completed = new boolean[steps.length];
+        try {
+            for (int i = 0; i < steps.length; i++) {
+                final BackgroundJob<?> step = steps[i];
+                final AggregateProgress.Part part = progress.newPart(getWeight(step));
+                indexes.put(completion.submit(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        if (monitor.isAborting()) {
+                            throw new CancellationException("aborted before the step started");
+                        }
+                        currentSteps.add(step);
+                        try {
+                            final Object result = step.work(part);
+                            part.done();
+                            return result;
+                        } finally {
+                            currentSteps.remove(step);
+                        }
+                    }
+                }), i);
+            }
+
+            // in the order they finish, so that a failure is noticed right away
+            for (int remaining = steps.length; remaining > 0; remaining--) {
+                final Future<Object> future;
+                try {
+                    future = completion.take();
+                } catch (final InterruptedException e) {
+                    if (monitor.isAborting()) {
+                        break;
+                    }
+                    throw e;
+                }
+                final int index = indexes.get(future);
+                try {
+                    results[index] = future.get();
+                    completed[index] = true;
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (monitor.isAborting() && (cause instanceof CancellationException || cause instanceof InterruptedException)) {
+                        continue;
+                    }
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        } finally {
+            // stops the other steps on failure or abort
+            for (final Future<Object> future : indexes.keySet()) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+
+        final List<Object> list = new ArrayList<Object>(steps.length);
+        for (int i = 0; i < steps.length && completed[i]; i++) {
+            list.add(results[i]);
+        }
+        return list;
+    }
+
+    private int getWeight(final BackgroundJob<?> step) {
+        return step instanceof WeightedBackgroundJob ? ((WeightedBackgroundJob<?>) step)
+                .getWeight() : 1;
+    }
+
+    @Override
+    public String getDescription() {
+        final StringBuilder running = new StringBuilder();
+        for (final BackgroundJob<?> step : currentSteps) {
+            running.append(running.length() == 0 ? "" : ", ").append(step.getDescription());
+        }
+        return running.length() == 0 ? description : description + " / " + running;
+    }
+}
@@ -0,0 +1,146 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link BackgroundThreadFactory} that runs jobs on long-lived pooled
+ * worker threads instead of creating a new {@link Thread} for every job.
+ * <br>
+ * <br>
+ * Use it with {@link BackgroundJobScheduler#setThreadFactory(BackgroundThreadFactory)}.
+ * The pool size should match
+ * {@link BackgroundJobScheduler#setParallelism(int)}: if it is smaller, started
+ * jobs wait in state {@link BackgroundJobInfo.State#STARTING} until a worker
+ * becomes available (they can still be aborted while waiting).
+ * <br>
+ * <br>
+ * Jobs the executor rejects, e.g. because it is bounded or has been
+ * {@link #shutdown()}, fail with the {@link java.util.concurrent.RejectedExecutionException}
+ * instead of being run.
+ *
+ * @since 1.29
+ */
+public class PooledBackgroundThreadFactory implements BackgroundThreadFactory {
+
+	private final class PooledThread implements BackgroundThread {
+		private final RunnableFuture<?> f;
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private PooledThread(RunnableFuture<?> f) {
+			this.f = f;
+		}
+
+		@Override
+		public void start() {
+			try {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							f.run();
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				// never runs, so nobody should wait for it
+				done.countDown();
+				throw e;
+			}
+		}
+
+		@Override
+		public void join(long timeout) throws InterruptedException {
+			if (timeout == 0) {
+				done.await();
+			} else {
+				done.await(timeout, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private final ExecutorService executor;
+
+	/**
+	 * Create a factory backed by its own pool of daemon worker threads. Idle
+	 * workers are retired after a minute.
+	 *
+	 * @param poolSize
+	 *            the maximum number of worker threads.
+	 */
+	public PooledBackgroundThreadFactory(int poolSize) {
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "BackgroundJob Worker-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+	}
+
+	/**
+	 * Create a factory that runs jobs on the given executor.
+	 *
+	 * @param executor
+	 *            the executor, managed by the caller.
+	 */
+	public PooledBackgroundThreadFactory(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public BackgroundThread createThread(RunnableFuture<?> f) {
+		return new PooledThread(f);
+	}
+
+	/**
+	 * Shut down the underlying executor. Jobs already handed to the pool are
+	 * still executed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,271 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the outcomes (results or failures) of the most recently finished
+ * jobs, in the order they were released, so that summaries of older jobs do not hold on to them. When more
+ * than the maximum number of outcomes are stored, or their weight exceeds
+ * the maximum number of bytes, the oldest ones are dropped; an outcome
+ * heavier than the maximum is not stored at all. Outcomes removed out of
+ * order are only marked and skipped (or purged in bulk) by the eviction, so
+ * no operation has to search the queue.
+ */
+final class ResultCache {
+	/** rough size of an Outcome, its map node and queue node */
+	private static final long OUTCOME_OVERHEAD = 128;
+	/** object header and length of an array */
+	private static final long ARRAY_OVERHEAD = 16;
+	/** object header, hash and array header of a String */
+	private static final long STRING_OVERHEAD = 40;
+	/** a reference and the node or slot holding it */
+	private static final long ELEMENT_OVERHEAD = 32;
+	/** a Throwable with its message, per frame of its stack trace */
+	private static final long THROWABLE_OVERHEAD = 256;
+	private static final long FRAME_OVERHEAD = 64;
+	/** removed outcomes tolerated in the queue, beyond the number of live ones */
+	private static final int MIN_PURGE = 64;
+
+	static final class Outcome {
+		final String id;
+		/** identifies the job, ids may be reused */
+		final long seq;
+		final Object result;
+		final Throwable failure;
+		final long bytes;
+		/** set once it no longer counts, see {@link ResultCache#unlink(Outcome)} */
+		final AtomicBoolean removed = new AtomicBoolean();
+
+		Outcome(String id, long seq, Object result, Throwable failure, long bytes) {
+			this.id = id;
+			this.seq = seq;
+			this.result = result;
+			this.failure = failure;
+			this.bytes = bytes;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Outcome> outcomes = new ConcurrentHashMap<String, Outcome>();
+	private final ConcurrentLinkedQueue<Outcome> order = new ConcurrentLinkedQueue<Outcome>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+	/** removed outcomes still in the queue */
+	private final AtomicInteger dead = new AtomicInteger();
+	/** set while a thread evicts, so that limits are checked and applied together */
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private volatile int maxSize;
+	private volatile long maxBytes = 0;
+	private volatile ToLongFunction<Object> weigher = ResultCache::estimateSize;
+
+	ResultCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * A rough estimate of the heap taken by a result or failure: exact for
+	 * strings and primitive arrays, shallow for collections, maps and object
+	 * arrays, and a constant for any other object.
+	 */
+	static long estimateSize(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof CharSequence) {
+			return STRING_OVERHEAD + 2L * ((CharSequence) value).length();
+		}
+		if (value instanceof Throwable) {
+			return THROWABLE_OVERHEAD + FRAME_OVERHEAD * ((Throwable) value).getStackTrace().length;
+		}
+		if (value instanceof Collection) {
+			return ARRAY_OVERHEAD + ELEMENT_OVERHEAD * ((Collection<?>) value).size();
+		}
+		if (value instanceof Map) {
+			return ARRAY_OVERHEAD + 2 * ELEMENT_OVERHEAD * ((Map<?, ?>) value).size();
+		}
+		final Class<?> type = value.getClass().getComponentType();
+		if (type == null) {
+			return ARRAY_OVERHEAD;
+		}
+		final int length = Array.getLength(value);
+		if (!type.isPrimitive()) {
+			return ARRAY_OVERHEAD + 8L * length;
+		}
+		final long width = type == long.class || type == double.class ? 8
+				: type == int.class || type == float.class ? 4
+						: type == short.class || type == char.class ? 2 : 1;
+		return ARRAY_OVERHEAD + width * length;
+	}
+
+	void put(String id, long seq, Object result, Throwable failure) {
+		if (maxSize <= 0) {
+			return;
+		}
+		final Object value = failure != null ? failure : result;
+		final long weight = OUTCOME_OVERHEAD + (value == null ? 0 : Math.max(0, weigher.applyAsLong(value)));
+		final long max = maxBytes;
+		if (max > 0 && weight > max) {
+			// never kept, and must not push out anything else; an earlier
+			// job of the same id has been replaced by this one though
+			final Outcome stale = outcomes.remove(id);
+			if (stale != null) {
+				discard(stale);
+			}
+			return;
+		}
+		final Outcome outcome = new Outcome(id, seq, result, failure, weight);
+		final Outcome replaced = outcomes.put(id, outcome);
+		if (replaced != null) {
+			discard(replaced);
+		}
+		order.add(outcome);
+		size.incrementAndGet();
+		bytes.addAndGet(weight);
+		evict();
+	}
+
+	/**
+	 * @return the outcome of the given job, or <code>null</code> if it is not
+	 *         (or no longer) cached.
+	 */
+	Outcome get(String id, long seq) {
+		final Outcome outcome = outcomes.get(id);
+		return outcome != null && outcome.seq == seq ? outcome : null;
+	}
+
+	void remove(String id, long seq) {
+		final Outcome outcome = get(id, seq);
+		if (outcome != null && outcomes.remove(id, outcome)) {
+			discard(outcome);
+		}
+	}
+
+	/**
+	 * Stop counting an outcome. Only the first call for an outcome has an
+	 * effect.
+	 *
+	 * @return whether this call removed it.
+	 */
+	private boolean unlink(Outcome outcome) {
+		if (!outcome.removed.compareAndSet(false, true)) {
+			return false;
+		}
+		size.decrementAndGet();
+		bytes.addAndGet(-outcome.bytes);
+		return true;
+	}
+
+	/** removes an outcome that is still somewhere in the queue */
+	private void discard(Outcome outcome) {
+		if (unlink(outcome)) {
+			dead.incrementAndGet();
+			evict();
+		}
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	long bytes() {
+		return bytes.get();
+	}
+
+	private boolean overLimit() {
+		final long max = maxBytes;
+		return size.get() > maxSize || max > 0 && bytes.get() > max;
+	}
+
+	private boolean needsPurge() {
+		return dead.get() > Math.max(MIN_PURGE, size.get());
+	}
+
+	private void evict() {
+		// re-checked after the flag is cleared, for outcomes added meanwhile
+		while ((overLimit() || needsPurge()) && evicting.compareAndSet(false, true)) {
+			try {
+				while (overLimit()) {
+					final Outcome oldest = order.poll();
+					if (oldest == null) {
+						break;
+					}
+					if (unlink(oldest)) {
+						outcomes.remove(oldest.id, oldest);
+					} else {
+						// removed before, skipped now
+						dead.decrementAndGet();
+					}
+				}
+				if (needsPurge()) {
+					for (Iterator<Outcome> i = order.iterator(); i.hasNext();) {
+						if (i.next().removed.get()) {
+							i.remove();
+							dead.decrementAndGet();
+						}
+					}
+				}
+			} finally {
+				evicting.set(false);
+			}
+		}
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/** only applies to outcomes stored afterwards */
+	void setWeigher(ToLongFunction<Object> weigher) {
+		this.weigher = weigher == null ? ResultCache::estimateSize : weigher;
+	}
+}
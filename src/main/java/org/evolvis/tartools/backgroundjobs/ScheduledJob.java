@@ -29,30 +29,82 @@ package org.evolvis.tartools.backgroundjobs;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.evolvis.tartools.backgroundjobs.BackgroundJobMonitor.Severity;
 
 class ScheduledJob<T> implements BackgroundJobStatus<T> {
-    private final BackgroundThread thread;
-    private final FutureTask<T> future;
-    private int workDone;
-    private int workTotal;
+    private BackgroundThreadFactory threadFactory;
+    /** null once released, see {@link #release()} */
+    private volatile FutureTask<T> future;
+    /** the outcome of {@link #future} after it was released */
+    private T releasedResult;
+    private Throwable releasedFailure;
+    /** released once the job will not execute any more code */
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicLong workDone = new AtomicLong();
+    private final AtomicLong workTotal = new AtomicLong();
+    /** set while a progress notification is being delivered */
+    private final AtomicBoolean progressPending = new AtomicBoolean();
+    /** set by reports that found a delivery in progress, to be covered by it */
+    private final AtomicBoolean progressRequested = new AtomicBoolean();
+    /** the progress last covered by {@link #lastModified} */
+    private volatile long observedWorkDone;
+    private volatile long observedWorkTotal;
+    /** the last sample taken by {@link #getThroughput()} */
+    private final AtomicReference<RateSample> rateSample = new AtomicReference<RateSample>();
+    /** coalescing of progress events, see {@link #setProgressCoalescing(long, int)} */
+    private long progressInterval = 0;
+    private int progressUnits = 0;
+    private volatile long lastProgressDelivery = System.nanoTime();
+    /** the work done carried by the last progress event */
+    private volatile long deliveredWorkDone;
+    private volatile boolean progressDeferred;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
     private State state = State.SCHEDULED;
-    private final ArrayList<JobListener> listeners = new ArrayList<JobListener>();
+    private volatile CopyOnWriteArrayList<JobListener> stateListeners = new CopyOnWriteArrayList<JobListener>();
+    private volatile CopyOnWriteArrayList<JobListener> progressListeners = new CopyOnWriteArrayList<JobListener>();
+    /** notified inline before all other listeners, see {@link #setSchedulerListener(JobListener)} */
+    private JobListener schedulerListener;
+    private JobEventDispatcher dispatcher;
+    private JobEventDispatcher.Lane lane;
     private final Object stateLock = new Object();
+    /** state changes made under {@link #stateLock}, notified in order after it is released */
+    private final ConcurrentLinkedQueue<JobEvent> stateEvents = new ConcurrentLinkedQueue<JobEvent>();
+    /** held while notifying, see {@link #fireStateEvents(boolean)} */
+    private final ReentrantLock fireLock = new ReentrantLock();
     final private String description;
     final private Class<?> jobClass;
     final private String id;
-    private boolean aborting;
+    private volatile boolean aborting;
     private long startTime;
-    private long lastModified;
+    private volatile long lastModified;
+    /** {@link System#nanoTime()} at which each state was entered, indexed by ordinal */
+    private final AtomicLongArray stateTimestamps = new AtomicLongArray(State.values().length);
     final private boolean visible;
     final private boolean cancellationSupported;
+    final private int priority;
+    /** told once the job can be released, see {@link #setDoneListener(Runnable)} */
+    private volatile Runnable doneListener;
+    /** set by a listener of the change to RUNNING, see {@link #failBeforeWork(Throwable)} */
+    private volatile Throwable startFailure;
+    /** the factory that creates (and later releases) the log of this job */
+    final private BackgroundJobLogFactory jobLogFactory;
 
     public ScheduledJob(final BackgroundJob<T> job,
             final BackgroundThreadFactory threadFactory,
@@ -84,22 +136,39 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
             jobLog.log(severity, message);
         }
 
+        // no locks and, unless someone is listening, no allocations
         @Override
         public void announceTotal(final int totalItems) {
-            workTotal = totalItems;
-            fireProgressInfoUpdated();
+            announceTotal((long) totalItems);
         }
 
         @Override
         public void reportProgressIncrement(final int items) {
-            workDone += items;
-            fireProgressInfoUpdated();
+            reportProgressIncrement((long) items);
         }
 
         @Override
         public void reportProgressAbsolute(final int items) {
-            workDone = items;
-            fireProgressInfoUpdated();
+            reportProgressAbsolute((long) items);
+        }
+
+        @Override
+        public void announceTotal(final long totalItems) {
+            workTotal.set(totalItems);
+            // rare and always worth telling
+            deliverProgress();
+        }
+
+        @Override
+        public void reportProgressIncrement(final long items) {
+            workDone.addAndGet(items);
+            progressUpdated();
+        }
+
+        @Override
+        public void reportProgressAbsolute(final long items) {
+            workDone.set(items);
+            progressUpdated();
         }
 
         @Override
@@ -117,34 +186,48 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
         this.description = job.getDescription();
         this.visible = job.isVisible();
         this.cancellationSupported = job.isCancellationSupported();
+        this.priority = job.getPriority();
         this.jobClass = job.getClass();
+        this.threadFactory = threadFactory;
+        this.jobLogFactory = jobLogFactory;
         startTime = System.currentTimeMillis();
+        stateTimestamps.set(State.SCHEDULED.ordinal(), System.nanoTime());
         final Callable<T> callable;
         callable = new Callable<T>() {
 
             @Override
             public T call() throws Exception {
-                jobRunning();
-                final BackgroundJobLog jobLog = jobLogFactory.createJobLog(id);
-                final Monitor monitor = new Monitor(jobLog);
                 try {
-                    final T result = job.work(monitor);
-                    jobReturned();
-                    return result;
-                } catch (final Throwable e) {
-                    jobRaisedException();
-                    final StringWriter stringWriter = new StringWriter();
-                    final PrintWriter printWriter = new PrintWriter(stringWriter);
-                    e.printStackTrace(printWriter);
-                    monitor.log(Severity.ERROR,
-                            "Job raised an uncaught exception:" + stringWriter);
-                    if (e instanceof Exception) {
-                        throw (Exception) e;
+                    jobRunning();
+                    final BackgroundJobLog jobLog = jobLogFactory.createJobLog(id);
+                    final Monitor monitor = new Monitor(jobLog);
+                    final JobFlightRecorder.JobExecution execution = JobFlightRecorder.executionStarted(ScheduledJob.this);
+                    try {
+                        final Throwable notStarted = startFailure;
+                        if (notStarted != null) {
+                            throw notStarted;
+                        }
+                        final T result = job.work(monitor);
+                        jobReturned();
+                        return result;
+                    } catch (final Throwable e) {
+                        jobRaisedException();
+                        final StringWriter stringWriter = new StringWriter();
+                        final PrintWriter printWriter = new PrintWriter(stringWriter);
+                        e.printStackTrace(printWriter);
+                        monitor.log(Severity.ERROR,
+                                "Job raised an uncaught exception:" + stringWriter);
+                        if (e instanceof Exception) {
+                            throw (Exception) e;
+                        }
+                        throw new RuntimeException(e);
+
+                    } finally {
+                        JobFlightRecorder.executionEnded(execution, ScheduledJob.this);
+                        monitor.close();
                     }
-                    throw new RuntimeException(e);
-
                 } finally {
-                    monitor.close();
+                    finished.countDown();
                 }
 
             }
@@ -152,70 +235,226 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
         };
 
         future = futureFactory.createFutureTask(callable);
-        thread = threadFactory.createThread(future);
+        // the thread is not created before the job is actually started
 
     }
 
-    public void execute() {
-        jobStarted();
-        thread.start();
+    /**
+     * Start executing the job.
+     *
+     * @return <code>false</code> if the job was no longer
+     *         {@link State#SCHEDULED} (i.e. it was aborted in the meantime) and
+     *         thus has not been started.
+     */
+    public boolean execute() {
+        if (!jobStarted()) {
+            return false;
+        }
+        try {
+            threadFactory.createThread(new FutureTask<Void>(future, null) {
+
+                @Override
+                protected void done() {
+                    // unlike the end of the callable, the job's future is done by now
+                    jobDone();
+                }
+            }).start();
+        } catch (final RuntimeException e) {
+            // e.g. rejected by a pool: the job will never run
+            jobNotStarted(e);
+        }
+        return true;
     }
 
-    private void jobStarted() {
-        setState(State.STARTING);
+    /**
+     * Fail a job that could not be handed to a thread. Like any final
+     * state, this gives its worker slot back to the scheduler.
+     */
+    private void jobNotStarted(final RuntimeException e) {
+        final FutureTask<T> failed = new FutureTask<T>(() -> {
+            throw e;
+        });
+        failed.run();
+        future = failed;
+        synchronized (stateLock) {
+            changeState(state == State.ABORTING_STARTING ? State.ABORTED : State.FAILED);
+        }
+        fireStateEvents(true);
+        finished.countDown();
+        jobDone();
+    }
+
+    private boolean jobStarted() {
+        return transition(State.SCHEDULED, State.STARTING);
     }
 
     private void jobRunning() {
         synchronized (stateLock) {
-            if (getState() == State.ABORTING_STARTING) {
-                setState(State.ABORTING);
+            if (state == State.ABORTING_STARTING) {
+                changeState(State.ABORTING);
                 future.cancel(true);
             } else {
-                setState(State.RUNNING);
+                changeState(State.RUNNING);
             }
         }
-
+        // delivered before the job starts working
+        fireStateEvents(true);
     }
 
     protected void jobRaisedException() {
-        setState(State.FAILED);
+        synchronized (stateLock) {
+            changeState(State.FAILED);
+        }
+        fireStateEvents(true);
     }
 
     protected void jobReturned() {
         synchronized (stateLock) {
-            setState(getState() == State.ABORTING ? State.ABORTED
+            changeState(state == State.ABORTING ? State.ABORTED
                     : State.SUCCEEDED);
         }
+        fireStateEvents(true);
     }
 
     @Override
     public void abort() {
+        boolean neverRuns = false;
         synchronized (stateLock) {
-            switch (getState()) {
+            switch (state) {
                 case SCHEDULED:
-                    setState(State.ABORTED);
+                    changeState(State.ABORTED);
                     future.cancel(true);
+                    neverRuns = true;
                     break;
                 case STARTING:
-                    setState(State.ABORTING_STARTING);
+                    changeState(State.ABORTING_STARTING);
+                    break;
+                case ABORTING_STARTING:
+                    // already requested; cancelling the future now would
+                    // keep the job from ever reaching a final state
+                    break;
+                case ABORTED:
+                case SUCCEEDED:
+                case FAILED:
+                    // already done, nothing to abort
                     break;
                 default:
-                    setState(State.ABORTING);
+                    changeState(State.ABORTING);
                     future.cancel(true);
                     break;
             }
         }
+        // may be called by a listener, which must not wait for the job
+        fireStateEvents(false);
+        if (neverRuns) {
+            finished.countDown();
+            jobDone();
+        }
     }
 
     @Override
     public void join(final long timeout) throws InterruptedException {
-        thread.join(timeout);
+        // like Thread.join(long), a timeout of 0 means to wait forever
+        if (timeout == 0) {
+            finished.await();
+        } else {
+            finished.await(timeout, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public T result() throws InterruptedException, ExecutionException {
+        final FutureTask<T> f = future;
+        if (f != null) {
+            return f.get();
+        }
+        if (releasedFailure instanceof CancellationException) {
+            throw (CancellationException) releasedFailure;
+        }
+        if (releasedFailure != null) {
+            throw new ExecutionException(releasedFailure);
+        }
+        return releasedResult;
+    }
 
-        return future.get();
+    /**
+     * Drop everything a finished job no longer needs: the future (keeping
+     * just its outcome), the thread factory and the listeners. Does nothing until the job has finished and its future is
+     * done, so that no event is lost.
+     *
+     * @return <code>true</code> if the job is released now or was before.
+     */
+    boolean release() {
+        final FutureTask<T> f = future;
+        if (f == null) {
+            return true;
+        }
+        if (finished.getCount() > 0 || !f.isDone()) {
+            return false;
+        }
+        synchronized (stateLock) {
+            if (future == null) {
+                return true;
+            }
+            try {
+                releasedResult = f.get();
+            } catch (final ExecutionException e) {
+                releasedFailure = e.getCause();
+            } catch (final CancellationException e) {
+                releasedFailure = e;
+            } catch (final InterruptedException e) {
+                // cannot happen, the future is done
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            // pending asynchronous deliveries keep the old lists
+            stateListeners = new CopyOnWriteArrayList<JobListener>();
+            progressListeners = new CopyOnWriteArrayList<JobListener>();
+            schedulerListener = null;
+            threadFactory = null;
+            future = null;
+        }
+        return true;
+    }
+
+    /** the result once released, see {@link #release()} */
+    T getReleasedResult() {
+        return releasedResult;
+    }
+
+    /** the failure (or cancellation) once released, see {@link #release()} */
+    Throwable getReleasedFailure() {
+        return releasedFailure;
+    }
+
+    BackgroundJobLogFactory getJobLogFactory() {
+        return jobLogFactory;
+    }
+
+    /**
+     * Set who to tell once the job has finished and its future is done, so
+     * that {@link #release()} succeeds. Called on the job's thread, or on the
+     * thread that aborted the job before it started. Must be called before
+     * the job is started or aborted.
+     */
+    void setDoneListener(final Runnable doneListener) {
+        this.doneListener = doneListener;
+    }
+
+    private void jobDone() {
+        final Runnable listener = doneListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Make the job fail with the given cause instead of starting its work.
+     * Only has an effect if called by the scheduler's listener on the change
+     * to {@link State#RUNNING}, which is notified before the work starts.
+     */
+    void failBeforeWork(final Throwable cause) {
+        startFailure = cause;
     }
 
     @Override
@@ -228,79 +467,347 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
 
     @Override
     public int getWorkDone() {
-
-        return workDone;
+        return WorkUnits.toInt(workDone.get(), workTotal.get());
     }
 
     @Override
     public int getWorkTotal() {
-        return workTotal;
+        return WorkUnits.toInt(workTotal.get(), workTotal.get());
+    }
+
+    @Override
+    public long getWorkDoneLong() {
+        return workDone.get();
+    }
+
+    @Override
+    public long getWorkTotalLong() {
+        return workTotal.get();
+    }
+
+    /**
+     * The progress counters as seen by {@link ScheduledJob#getThroughput()}.
+     */
+    private static final class RateSample {
+        /** time constant of the moving average, and how long a job may make no progress before it counts as stalled */
+        static final long WINDOW = TimeUnit.SECONDS.toNanos(5);
+        /** queries closer together than this reuse the previous sample */
+        static final long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+        final long time;
+        final long workDone;
+        /** when <code>workDone</code> was last seen to change */
+        final long progressTime;
+        /** units per second, NaN before the first measurement */
+        final double rate;
+
+        RateSample(final long time, final long workDone, final long progressTime, final double rate) {
+            this.time = time;
+            this.workDone = workDone;
+            this.progressTime = progressTime;
+            this.rate = rate;
+        }
+
+        RateSample next(final long now, final long done) {
+            final double instant = Math.max(0, (done - workDone) * 1e9 / (now - time));
+            // the weight of older samples decays with time, not with the number of queries
+            final double alpha = 1 - Math.exp(-(double) (now - time) / WINDOW);
+            final long progressed = done != workDone ? now : progressTime;
+            final double smoothed = now - progressed >= WINDOW ? 0
+                    : Double.isNaN(rate) ? instant : rate + alpha * (instant - rate);
+            return new RateSample(now, done, progressed, smoothed);
+        }
+
+        double rate() {
+            return Double.isNaN(rate) ? 0 : rate;
+        }
+    }
+
+    /**
+     * Computed lazily from the progress counters when asked for, so reporting
+     * progress does not pay for it. Concurrent callers race for the next
+     * sample with a CAS; the loser uses the winner's.
+     */
+    @Override
+    public double getThroughput() {
+        final State s = getState();
+        if (s != State.RUNNING && s != State.ABORTING) {
+            return 0;
+        }
+        RateSample last = rateSample.get();
+        if (last == null) {
+            long running = getStateTimestamp(State.RUNNING);
+            if (running == 0) {
+                running = getStateTimestamp(State.ABORTING);
+            }
+            rateSample.compareAndSet(null, new RateSample(running, 0, running, Double.NaN));
+            last = rateSample.get();
+        }
+        final long now = System.nanoTime();
+        if (now - last.time < RateSample.MIN_INTERVAL) {
+            return last.rate();
+        }
+        final RateSample next = last.next(now, workDone.get());
+        return rateSample.compareAndSet(last, next) ? next.rate() : rateSample.get().rate();
+    }
+
+    /**
+     * Coalesce progress events. Instead of notifying the listeners on every
+     * progress report, the latest progress is delivered only once at least
+     * <code>intervalMillis</code> have passed or <code>workDone</code>
+     * changed by at least <code>units</code> since the previous delivery. A
+     * deferred update is delivered at the latest before the next state change
+     * event, so the final value is never lost, and if the job stops
+     * reporting, by a timer once the interval (or, without one, a second)
+     * has passed. State changes are always delivered right away. Must be
+     * called before the job is started.
+     *
+     * @param intervalMillis
+     *            minimum time between two progress events, 0 to disable.
+     * @param units
+     *            minimum progress between two progress events, 0 to disable.
+     */
+    void setProgressCoalescing(final long intervalMillis, final int units) {
+        this.progressInterval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.progressUnits = units;
+    }
+
+    /**
+     * Set the scheduler's own listener. Unlike the listeners added with
+     * {@link #addJobListener(JobListener)}, it is always notified inline and
+     * before anyone else. Must be called before the job is started or
+     * aborted.
+     */
+    void setSchedulerListener(final JobListener schedulerListener) {
+        this.schedulerListener = schedulerListener;
+    }
+
+    /**
+     * Deliver events to the listeners added with
+     * {@link #addJobListener(JobListener)} through the given dispatcher
+     * instead of inline. Must be called before the job is started or
+     * aborted.
+     */
+    void setDispatcher(final JobEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        this.lane = dispatcher == null ? null : dispatcher.createLane();
+    }
+
+    /**
+     * Change the state only if it still is <code>expected</code>.
+     */
+    private boolean transition(final State expected, final State newState) {
+        synchronized (stateLock) {
+            if (this.state != expected) {
+                return false;
+            }
+            changeState(newState);
+        }
+        fireStateEvents(true);
+        return true;
     }
 
     public void setState(final State newState) {
-        final State oldState;
         synchronized (stateLock) {
-            oldState = this.state;
-            if (newState == oldState) {
+            changeState(newState);
+        }
+        fireStateEvents(false);
+    }
+
+    /**
+     * Record a state change. Called with stateLock held; the listeners are
+     * notified by {@link #fireStateEvents(boolean)} once it is released, so
+     * that a listener reading the state on another thread never waits for a
+     * notification that is waiting for it, e.g. in a full
+     * {@link JobEventDispatcher}.
+     */
+    private void changeState(final State newState) {
+        final State oldState = this.state;
+        if (newState == oldState) {
+            return;
+        }
+        // copy this information, so the job does not need to
+        // obtain stateLock for calling isAborting()
+        if (newState == State.ABORTING) {
+            aborting = true;
+        }
+        this.state = newState;
+        stamp(newState);
+        stateEvents.add(new JobEvent(this, oldState, newState));
+    }
+
+    /**
+     * Notify the listeners of the recorded state changes. One thread at a
+     * time does so, which keeps the events in order. With
+     * <code>wait</code>, the caller waits for its turn, so its own change
+     * has been delivered when this returns; otherwise it leaves its change
+     * to the thread notifying already, which re-checks for more once done.
+     */
+    private void fireStateEvents(final boolean wait) {
+        do {
+            if (wait) {
+                fireLock.lock();
+            } else if (!fireLock.tryLock()) {
                 return;
             }
-            // copy this information, so the job does not need to
-            // obtain stateLock for calling isAborting()
-            if (newState == State.ABORTING) {
-                aborting = true;
+            try {
+                JobEvent e;
+                while ((e = stateEvents.poll()) != null) {
+                    fireStateChanged(e);
+                }
+            } finally {
+                fireLock.unlock();
             }
-            this.state = newState;
+        } while (!stateEvents.isEmpty());
+    }
 
-        }
-        fireStateChanged(oldState, newState);
+    // called with stateLock held anyway, before any listener sees the new state
+    private void stamp(final State newState) {
+        stateTimestamps.set(newState.ordinal(), System.nanoTime());
+    }
 
+    @Override
+    public long getStateTimestamp(final State state) {
+        return stateTimestamps.get(state.ordinal());
     }
 
     @Override
     public void addJobListener(final JobListener l) {
-        synchronized (listeners) {
-            if (!listeners.contains(l)) {
-                listeners.add(l);
+        stateListeners.addIfAbsent(l);
+        progressListeners.addIfAbsent(l);
+    }
+
+    @Override
+    public void addJobListener(final JobListener l, final JobEvent.Type... types) {
+        for (final JobEvent.Type type : types) {
+            switch (type) {
+                case STATE_CHANGED:
+                    stateListeners.addIfAbsent(l);
+                    break;
+                case PROGRESS_UPDATED:
+                    progressListeners.addIfAbsent(l);
+                    break;
             }
         }
     }
 
     @Override
     public void removeJobListener(final JobListener l) {
-        synchronized (listeners) {
-            if (listeners.contains(l)) {
-                listeners.remove(l);
+        stateListeners.remove(l);
+        progressListeners.remove(l);
+    }
+
+    private void fireStateChanged(final JobEvent e) {
+        if (progressDeferred) {
+            // never lose the final progress, and deliver it first
+            deliverProgress();
+        }
+        markModified();
+        if (schedulerListener != null) {
+            schedulerListener.stateChanged(e);
+        }
+        if (dispatcher != null) {
+            if (!stateListeners.isEmpty()) {
+                dispatcher.dispatch(lane, stateListeners, e);
             }
+            return;
+        }
+        for (final JobListener jobListener : stateListeners) {
+            jobListener.stateChanged(e);
         }
     }
 
-    private void fireStateChanged(final State oldState, final State newState) {
-        lastModified = System.currentTimeMillis();
-        final ArrayList<JobListener> clonedListeners;
-        final JobEvent e;
-        synchronized (listeners) {
-            clonedListeners = new ArrayList<JobListener>(listeners);
-            e = new JobEvent(this, oldState, newState);
+    /**
+     * Called after every progress report. Only one reporting thread at a
+     * time delivers a notification, carrying the latest counters at the time
+     * of delivery; concurrent reports return right away instead of waiting
+     * for the listeners, and the delivering thread delivers once more if
+     * any of them came in after it had read the counters.
+     */
+    private void progressUpdated() {
+        if (progressListeners.isEmpty()) {
+            return;
         }
-        for (final JobListener jobListener : clonedListeners) {
-            jobListener.stateChanged(e);
+        if (progressInterval > 0 || progressUnits > 0) {
+            if (!(progressUnits > 0 && Math.abs(workDone.get() - deliveredWorkDone) >= progressUnits)
+                    && !(progressInterval > 0 && System.nanoTime() - lastProgressDelivery >= progressInterval)) {
+                // delivered later, by the next report, the flush or the next state change
+                progressDeferred = true;
+                scheduleFlush();
+                return;
+            }
+        }
+        deliverProgress();
+    }
+
+    private void deliverProgress() {
+        if (progressListeners.isEmpty()) {
+            return;
+        }
+        progressRequested.set(true);
+        while (progressRequested.get() && progressPending.compareAndSet(false, true)) {
+            try {
+                // requests made from here on are covered by this delivery or the next
+                progressRequested.set(false);
+                fireProgressInfoUpdated();
+            } finally {
+                progressPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Deliver deferred progress even if the job does not report again. Runs
+     * the listeners on the flush thread unless there is a dispatcher.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            final long delay = progressInterval > 0 ? lastProgressDelivery + progressInterval - System.nanoTime()
+                    : ProgressFlush.DEFAULT_DELAY;
+            ProgressFlush.EXECUTOR.schedule(this::flushProgress, Math.max(0, delay), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushProgress() {
+        // cleared first, so a deferral from now on schedules another flush
+        flushScheduled.set(false);
+        if (progressDeferred) {
+            deliverProgress();
         }
     }
 
+    /** the timer of {@link ScheduledJob#scheduleFlush()}, created on first use */
+    private static final class ProgressFlush {
+        static final long DEFAULT_DELAY = TimeUnit.SECONDS.toNanos(1);
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "BackgroundJob Progress Flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     private void fireProgressInfoUpdated() {
-        lastModified = System.currentTimeMillis();
-        final ArrayList<JobListener> clonedListeners;
-        final JobEvent e;
-        synchronized (listeners) {
-            clonedListeners = new ArrayList<JobListener>(listeners);
-            e = new JobEvent(this);
+        progressDeferred = false;
+        lastProgressDelivery = System.nanoTime();
+        markModified();
+        final JobEvent e = new JobEvent(this);
+        deliveredWorkDone = e.getWorkDoneLong();
+        if (dispatcher != null) {
+            dispatcher.dispatch(lane, progressListeners, e);
+            return;
         }
-        for (final JobListener jobListener : clonedListeners) {
-            jobListener.stateChanged(e);
+        for (final JobListener jobListener : progressListeners) {
+            jobListener.progressInfoUpdated(e);
         }
 
     }
 
+    private void markModified() {
+        observedWorkDone = workDone.get();
+        observedWorkTotal = workTotal.get();
+        lastModified = System.currentTimeMillis();
+    }
+
     @Override
     public String getId() {
 
@@ -321,6 +828,10 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
 
     @Override
     public long getLastModified() {
+        // progress nobody listened to is timestamped when first observed
+        if (observedWorkDone != workDone.get() || observedWorkTotal != workTotal.get()) {
+            markModified();
+        }
         return lastModified;
     }
 
@@ -338,4 +849,9 @@ class ScheduledJob<T> implements BackgroundJobStatus<T> {
     public boolean isCancellationSupported() {
         return cancellationSupported;
     }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
 }
@@ -0,0 +1,222 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+
+/**
+ * Counters and latency histograms maintained by a
+ * {@link BackgroundJobScheduler}, see {@link BackgroundJobScheduler#getMetrics()}.
+ * <br>
+ * <br>
+ * Everything here can be read at any time without taking a scheduler lock,
+ * so it is cheap enough to be scraped every second. Values are weakly
+ * consistent: a snapshot taken while jobs are changing state may count a job
+ * in one place but not yet in another. Counters only ever grow; compute
+ * throughput from the difference between two readings.
+ *
+ * @since 1.29
+ */
+public class SchedulerMetrics {
+
+	/**
+	 * Metrics for one job class, or for all jobs (see
+	 * {@link SchedulerMetrics#getTotal()}).
+	 */
+	public static class JobClassMetrics {
+		private final LongAdder submitted = new LongAdder();
+		private final LongAdder started = new LongAdder();
+		private final LongAdder succeeded = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder aborted = new LongAdder();
+		private final LatencyHistogram queueWait = new LatencyHistogram();
+		private final LatencyHistogram executionTime = new LatencyHistogram();
+		private final LatencyHistogram abortingTime = new LatencyHistogram();
+
+		/**
+		 * @return the number of jobs scheduled.
+		 */
+		public long getSubmitted() {
+			return submitted.sum();
+		}
+
+		/**
+		 * @return the number of jobs taken from the queue and started.
+		 */
+		public long getStarted() {
+			return started.sum();
+		}
+
+		/**
+		 * @return the number of jobs that ended in
+		 *         {@link State#SUCCEEDED}.
+		 */
+		public long getSucceeded() {
+			return succeeded.sum();
+		}
+
+		/**
+		 * @return the number of jobs that ended in {@link State#FAILED}.
+		 */
+		public long getFailed() {
+			return failed.sum();
+		}
+
+		/**
+		 * @return the number of jobs that ended in {@link State#ABORTED},
+		 *         including those aborted while still waiting.
+		 */
+		public long getAborted() {
+			return aborted.sum();
+		}
+
+		/**
+		 * @return the number of jobs that reached a final state.
+		 */
+		public long getCompleted() {
+			return succeeded.sum() + failed.sum() + aborted.sum();
+		}
+
+		/**
+		 * @return time from scheduling a job until it was started.
+		 */
+		public LatencyHistogram getQueueWait() {
+			return queueWait;
+		}
+
+		/**
+		 * @return time from {@link State#RUNNING} until a final state.
+		 */
+		public LatencyHistogram getExecutionTime() {
+			return executionTime;
+		}
+
+		/**
+		 * @return time from the abort request of a started job until it
+		 *         actually stopped.
+		 */
+		public LatencyHistogram getAbortingTime() {
+			return abortingTime;
+		}
+	}
+
+	private final BackgroundJobScheduler scheduler;
+	private final JobClassMetrics total = new JobClassMetrics();
+	private final ConcurrentHashMap<Class<?>, JobClassMetrics> byClass = new ConcurrentHashMap<Class<?>, JobClassMetrics>();
+
+	SchedulerMetrics(BackgroundJobScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return metrics summed up over all jobs.
+	 */
+	public JobClassMetrics getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return metrics per job class (see
+	 *         {@link BackgroundJobInfo#getJobClass()}), as a live view.
+	 */
+	public Map<Class<?>, JobClassMetrics> getJobClassMetrics() {
+		return Collections.unmodifiableMap(byClass);
+	}
+
+	/**
+	 * @return the number of jobs waiting to be started.
+	 */
+	public int getQueueDepth() {
+		return scheduler.queueDepth;
+	}
+
+	/**
+	 * @return the number of jobs occupying a worker slot.
+	 */
+	public int getActiveWorkers() {
+		return scheduler.activeJobs;
+	}
+
+	private JobClassMetrics of(BackgroundJobInfo job) {
+		final JobClassMetrics metrics = byClass.get(job.getJobClass());
+		return metrics != null ? metrics : byClass.computeIfAbsent(job.getJobClass(), c -> new JobClassMetrics());
+	}
+
+	void jobSubmitted(BackgroundJobInfo job) {
+		total.submitted.increment();
+		of(job).submitted.increment();
+	}
+
+	void jobStarted(BackgroundJobInfo job, long queueWait) {
+		final JobClassMetrics metrics = of(job);
+		total.started.increment();
+		metrics.started.increment();
+		total.queueWait.record(queueWait);
+		metrics.queueWait.record(queueWait);
+	}
+
+	/**
+	 * @param executionTime
+	 *            nanoseconds spent since RUNNING, negative if the job never
+	 *            ran.
+	 * @param abortingTime
+	 *            nanoseconds spent since the job was asked to abort, negative
+	 *            if it was not aborted while running.
+	 */
+	void jobFinished(BackgroundJobInfo job, State state, long executionTime, long abortingTime) {
+		final JobClassMetrics metrics = of(job);
+		switch (state) {
+			case SUCCEEDED:
+				total.succeeded.increment();
+				metrics.succeeded.increment();
+				break;
+			case FAILED:
+				total.failed.increment();
+				metrics.failed.increment();
+				break;
+			default:
+				total.aborted.increment();
+				metrics.aborted.increment();
+				break;
+		}
+		if (executionTime >= 0) {
+			total.executionTime.record(executionTime);
+			metrics.executionTime.record(executionTime);
+		}
+		if (abortingTime >= 0) {
+			total.abortingTime.record(abortingTime);
+			metrics.abortingTime.record(abortingTime);
+		}
+	}
+}
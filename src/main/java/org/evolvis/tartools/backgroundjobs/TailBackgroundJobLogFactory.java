@@ -0,0 +1,263 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobMonitor.Severity;
+
+/**
+ * A {@link BackgroundJobLogFactory} keeping the most recent lines of each
+ * job in memory, e.g. to show them in a UI.
+ * <br>
+ * <br>
+ * Every job gets a ring buffer capped by number of lines and (estimated)
+ * bytes; older lines are dropped. Buffers are kept after the job finished
+ * and dropped once the scheduler forgets the job (see
+ * {@link #release(String)}); a job reusing the id of an earlier one starts
+ * with an empty buffer. Lines can also be passed on to another factory,
+ * e.g. to still write them to a file.
+ * <br>
+ * <br>
+ * Install it with
+ * {@link BackgroundJobScheduler#setJobLogFactory(BackgroundJobLogFactory)}
+ * and read the lines through
+ * {@link BackgroundJobScheduler#getLogTail(String, int)} and
+ * {@link BackgroundJobScheduler#getLogLinesAfter(String, long, int)}, which
+ * find the factory that created the job's log, or directly from here.
+ *
+ * @since 1.29
+ */
+public class TailBackgroundJobLogFactory implements BackgroundJobLogFactory {
+
+	/**
+	 * One logged line.
+	 */
+	public static class LogLine {
+		private final long sequence;
+		private final long time;
+		private final Severity severity;
+		private final String message;
+
+		LogLine(long sequence, long time, Severity severity, String message) {
+			this.sequence = sequence;
+			this.time = time;
+			this.severity = severity;
+			this.message = message;
+		}
+
+		/**
+		 * @return the number of the line within its job, starting at 1. Use
+		 *         it as the cursor for
+		 *         {@link TailBackgroundJobLogFactory#getLinesAfter(String, long, int)}.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return when the line was logged, in milliseconds since the epoch.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public Severity getSeverity() {
+			return severity;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return severity + ": " + message;
+		}
+	}
+
+	/** the ring of one job, guarded by itself */
+	private static final class Tail {
+		private final LogLine[] lines;
+		private final long maxBytes;
+		private int first;
+		private int count;
+		private long bytes;
+		private long sequence;
+
+		Tail(int maxLines, long maxBytes) {
+			this.lines = new LogLine[maxLines];
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized void add(Severity severity, String message) {
+			final LogLine line = new LogLine(++sequence, System.currentTimeMillis(), severity, message);
+			if (count == lines.length) {
+				removeFirst();
+			}
+			lines[(first + count) % lines.length] = line;
+			count++;
+			bytes += size(line);
+			while (bytes > maxBytes && count > 1) {
+				removeFirst();
+			}
+		}
+
+		private void removeFirst() {
+			bytes -= size(lines[first]);
+			lines[first] = null;
+			first = (first + 1) % lines.length;
+			count--;
+		}
+
+		synchronized List<LogLine> after(long cursor, int max) {
+			final List<LogLine> result = new ArrayList<LogLine>(Math.max(0, Math.min(max, count)));
+			for (int i = 0; i < count && result.size() < max; i++) {
+				final LogLine line = lines[(first + i) % lines.length];
+				if (line.sequence > cursor) {
+					result.add(line);
+				}
+			}
+			return result;
+		}
+
+		synchronized List<LogLine> last(int n) {
+			final int skip = Math.max(0, count - Math.max(0, n));
+			final List<LogLine> result = new ArrayList<LogLine>(count - skip);
+			for (int i = skip; i < count; i++) {
+				result.add(lines[(first + i) % lines.length]);
+			}
+			return result;
+		}
+
+		private static long size(LogLine line) {
+			// the line, its string and the characters
+			return 80 + 2L * line.message.length();
+		}
+	}
+
+	private final ConcurrentHashMap<String, Tail> tails = new ConcurrentHashMap<String, Tail>();
+	private final int maxLines;
+	private final long maxBytes;
+	private final BackgroundJobLogFactory delegate;
+
+	/**
+	 * @param maxLines
+	 *            the number of lines to keep per job.
+	 * @param maxBytes
+	 *            the estimated heap to use per job at most. A single line
+	 *            longer than that is cut.
+	 * @param delegate
+	 *            a factory to pass all lines on to, or <code>null</code>.
+	 */
+	public TailBackgroundJobLogFactory(int maxLines, long maxBytes, BackgroundJobLogFactory delegate) {
+		if (maxLines < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException("maxLines and maxBytes must be positive");
+		}
+		this.maxLines = maxLines;
+		this.maxBytes = maxBytes;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public BackgroundJobLog createJobLog(final String id) {
+		// a job that reuses an id starts with an empty tail
+		final Tail tail = new Tail(maxLines, maxBytes);
+		tails.put(id, tail);
+		final BackgroundJobLog next = delegate == null ? null : delegate.createJobLog(id);
+		final int maxChars = (int) Math.min(Integer.MAX_VALUE, maxBytes / 2);
+		return new BackgroundJobLog() {
+
+			@Override
+			public void log(Severity severity, Object message) {
+				String text = String.valueOf(message);
+				if (text.length() > maxChars) {
+					text = text.substring(0, maxChars);
+				}
+				tail.add(severity, text);
+				if (next != null) {
+					next.log(severity, message);
+				}
+			}
+
+			@Override
+			public void close() {
+				// the lines stay until the job is released
+				if (next != null) {
+					next.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param id
+	 *            the id of the job.
+	 * @param n
+	 *            the number of lines.
+	 * @return the last <code>n</code> lines (or less) of the job, oldest
+	 *         first; empty if the job is unknown or <code>n</code> is not
+	 *         positive.
+	 */
+	public List<LogLine> getTail(String id, int n) {
+		final Tail tail = tails.get(id);
+		return tail == null ? Collections.<LogLine> emptyList() : tail.last(n);
+	}
+
+	/**
+	 * Follow the log of a job: start with a cursor of 0 and pass the
+	 * {@link LogLine#getSequence()} of the last line received as the next
+	 * cursor. Lines that were dropped from the buffer in between are
+	 * skipped, which shows as a gap in the sequence.
+	 *
+	 * @param id
+	 *            the id of the job.
+	 * @param cursor
+	 *            the sequence of the last line already seen.
+	 * @param max
+	 *            the maximum number of lines to return.
+	 * @return the retained lines after the cursor, oldest first; empty if
+	 *         <code>max</code> is not positive.
+	 */
+	public List<LogLine> getLinesAfter(String id, long cursor, int max) {
+		final Tail tail = tails.get(id);
+		return tail == null ? Collections.<LogLine> emptyList() : tail.after(cursor, max);
+	}
+
+	@Override
+	public void release(String id) {
+		tails.remove(id);
+		if (delegate != null) {
+			delegate.release(id);
+		}
+	}
+}
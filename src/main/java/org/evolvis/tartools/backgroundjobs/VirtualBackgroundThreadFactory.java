@@ -0,0 +1,125 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.RunnableFuture;
+
+/**
+ * A {@link BackgroundThreadFactory} that runs every job on its own JDK
+ * virtual thread.
+ * <br>
+ * <br>
+ * Virtual threads are cheap to create and release their carrier thread while
+ * blocked on I/O, locks or {@link Thread#sleep(long)}, so thousands of mostly
+ * blocking jobs can run at the same time. Select it with
+ * {@link BackgroundJobScheduler#setThreadFactory(BackgroundThreadFactory)} and
+ * raise {@link BackgroundJobScheduler#setParallelism(int)} accordingly.
+ * <br>
+ * <br>
+ * Aborting works as with platform threads: the virtual thread is interrupted
+ * and {@link BackgroundJobMonitor#isAborting()} returns <code>true</code>.
+ * <br>
+ * <br>
+ * Virtual threads need Java 21 or later. The library itself does not, so the
+ * API is looked up at runtime; use {@link #isSupported()} to check whether
+ * this factory can be used on the current JVM.
+ *
+ * @since 1.29
+ */
+public class VirtualBackgroundThreadFactory implements BackgroundThreadFactory {
+
+	private static final MethodHandle UNSTARTED;
+	private static final Object BUILDER_PROTOTYPE;
+
+	static {
+		MethodHandle unstarted = null;
+		Object builder = null;
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			final Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			final MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+					MethodType.methodType(ofVirtualClass));
+			final MethodHandle name = lookup.findVirtual(ofVirtualClass, "name",
+					MethodType.methodType(ofVirtualClass, String.class, long.class));
+			unstarted = lookup.findVirtual(builderClass, "unstarted",
+					MethodType.methodType(Thread.class, Runnable.class));
+			// fails on Java 19/20 unless preview features are enabled
+			builder = name.invoke(ofVirtual.invoke(), "BackgroundJob Virtual-", 1L);
+		} catch (Throwable t) {
+			unstarted = null;
+			builder = null;
+		}
+		UNSTARTED = unstarted;
+		BUILDER_PROTOTYPE = builder;
+	}
+
+	/**
+	 * @return whether the running JVM supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return UNSTARTED != null;
+	}
+
+	public VirtualBackgroundThreadFactory() {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+		}
+	}
+
+	@Override
+	public BackgroundThread createThread(RunnableFuture<?> f) {
+		final Thread t;
+		try {
+			// the builder numbers the threads and is not thread-safe
+			synchronized (BUILDER_PROTOTYPE) {
+				t = (Thread) UNSTARTED.invoke(BUILDER_PROTOTYPE, (Runnable) f);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("could not create virtual thread", e);
+		}
+		return new BackgroundThread() {
+
+			@Override
+			public void start() {
+				t.start();
+			}
+
+			@Override
+			public void join(long timeout) throws InterruptedException {
+				t.join(timeout);
+			}
+		};
+	}
+}
@@ -0,0 +1,524 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A job made of named steps that depend on each other's results.
+ * <br>
+ * <br>
+ * Steps are added with {@link #addStep(String, Step, String...)}, naming the
+ * steps whose results they consume. Those have to be added before, so the
+ * steps always form an acyclic graph. When the workflow runs, every step is
+ * started as soon as all of its inputs are available, with at most
+ * <code>parallelism</code> steps running at the same time. Steps added
+ * while the workflow runs are not part of that run.
+ * <br>
+ * <br>
+ * Progress is aggregated from all steps according to their weights. As soon
+ * as a step fails, the other steps are cancelled and the exception is
+ * rethrown. If the workflow is aborted, running steps are interrupted, no
+ * further steps are started and the {@link Result} contains the steps that
+ * finished until then.
+ * <br>
+ * <br>
+ * The {@link Result} also records when each step ran and which chain of
+ * steps determined the overall run time (the critical path).
+ *
+ * @since 1.29
+ */
+public class WorkflowBackgroundJob implements BackgroundJob<WorkflowBackgroundJob.Result> {
+
+    /**
+     * One step of a workflow.
+     *
+     * @param <T>
+     *            the type of the result of the step.
+     */
+    public interface Step<T> {
+
+        /**
+         * Execute the step, see {@link BackgroundJob#work(BackgroundJobMonitor)}.
+         *
+         * @param monitor
+         *            the monitor of this step.
+         * @param inputs
+         *            the results of the steps this one depends on, by name.
+         * @return the result of the step.
+         * @throws Exception
+         *             to fail the whole workflow.
+         */
+        T work(BackgroundJobMonitor monitor, Map<String, Object> inputs) throws Exception;
+    }
+
+    /**
+     * When a step ran, relative to the start of the workflow. All times are
+     * in nanoseconds.
+     */
+    public static final class StepTiming {
+
+        private final long start;
+        private final long finish;
+        private final long pathTime;
+
+        StepTiming(final long start, final long finish, final long pathTime) {
+            this.start = start;
+            this.finish = finish;
+            this.pathTime = pathTime;
+        }
+
+        /**
+         * @return when the step was started.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return when the step finished.
+         */
+        public long getFinish() {
+            return finish;
+        }
+
+        /**
+         * @return how long the step ran.
+         */
+        public long getDuration() {
+            return finish - start;
+        }
+
+        /**
+         * @return the summed up durations of the longest chain of steps
+         *         ending with this one.
+         */
+        public long getPathTime() {
+            return pathTime;
+        }
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMillis(getDuration()) + " ms";
+        }
+    }
+
+    /**
+     * The results and timings of the steps of a workflow.
+     */
+    public static final class Result {
+
+        private final Map<String, Object> results;
+        private final Map<String, StepTiming> timings;
+        private final List<String> criticalPath;
+        private final long elapsedTime;
+
+        Result(final Map<String, Object> results, final Map<String, StepTiming> timings,
+                final List<String> criticalPath, final long elapsedTime) {
+            this.results = Collections.unmodifiableMap(results);
+            this.timings = Collections.unmodifiableMap(timings);
+            this.criticalPath = Collections.unmodifiableList(criticalPath);
+            this.elapsedTime = elapsedTime;
+        }
+
+        /**
+         * @param step
+         *            the name of a step.
+         * @return the result of the step, or <code>null</code> if it did not
+         *         finish.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(final String step) {
+            return (T) results.get(step);
+        }
+
+        /**
+         * @param step
+         *            the name of a step.
+         * @return whether the step finished.
+         */
+        public boolean isCompleted(final String step) {
+            return results.containsKey(step);
+        }
+
+        /**
+         * @return the results of all finished steps, by name, in the order
+         *         they finished.
+         */
+        public Map<String, Object> getResults() {
+            return results;
+        }
+
+        /**
+         * @param step
+         *            the name of a step.
+         * @return when the step ran, or <code>null</code> if it did not
+         *         finish.
+         */
+        public StepTiming getTiming(final String step) {
+            return timings.get(step);
+        }
+
+        /**
+         * @return the names of the chain of finished steps with the longest
+         *         summed up duration, in execution order.
+         */
+        public List<String> getCriticalPath() {
+            return criticalPath;
+        }
+
+        /**
+         * @return the summed up duration of the critical path, in
+         *         nanoseconds.
+         */
+        public long getCriticalPathTime() {
+            return criticalPath.isEmpty() ? 0 : timings.get(criticalPath.get(criticalPath.size() - 1))
+                    .getPathTime();
+        }
+
+        /**
+         * @return the run time of the whole workflow, in nanoseconds.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        @Override
+        public String toString() {
+            return "critical path " + String.join(" -> ", criticalPath) + " ("
+                    + TimeUnit.NANOSECONDS.toMillis(getCriticalPathTime()) + " of "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + " ms)";
+        }
+    }
+
+    private static final class Node {
+        final String name;
+        final Step<?> step;
+        final int weight;
+        final String description;
+        final String[] inputs;
+        final List<Node> dependents = new ArrayList<Node>();
+
+        Node(final String name, final Step<?> step, final int weight, final String description,
+                final String[] inputs) {
+            this.name = name;
+            this.step = step;
+            this.weight = weight;
+            this.description = description;
+            this.inputs = inputs;
+        }
+    }
+
+    /** what a step hands back to the coordinating thread */
+    private static final class Outcome {
+        final Object value;
+        final long start;
+        final long finish;
+
+        Outcome(final Object value, final long start, final long finish) {
+            this.value = value;
+            this.start = start;
+            this.finish = finish;
+        }
+    }
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final String description;
+    private final int parallelism;
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    private final Set<Node> currentSteps = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param description
+     *            the description of the whole job.
+     * @param parallelism
+     *            the maximum number of steps to run at the same time.
+     */
+    public WorkflowBackgroundJob(final String description, final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.description = description;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds a step with a weight of 1.
+     *
+     * @see #addStep(String, int, Step, String...)
+     */
+    public WorkflowBackgroundJob addStep(final String name, final Step<?> step, final String... inputs) {
+        return addStep(name, 1, step, inputs);
+    }
+
+    /**
+     * Adds a step.
+     *
+     * @param name
+     *            the unique name of the step.
+     * @param weight
+     *            the share of the step in the overall progress, relative to
+     *            the other steps.
+     * @param step
+     *            the step.
+     * @param inputs
+     *            the names of the steps whose results this step consumes.
+     *            They must have been added already.
+     * @return this workflow.
+     */
+    public WorkflowBackgroundJob addStep(final String name, final int weight, final Step<?> step,
+            final String... inputs) {
+        return add(name, weight, step, name, inputs);
+    }
+
+    /**
+     * Adds a job that does not consume the results of its inputs, but must
+     * not start before they are finished. The weight is taken from
+     * {@link WeightedBackgroundJob}s.
+     *
+     * @param name
+     *            the unique name of the step.
+     * @param job
+     *            the job to run.
+     * @param inputs
+     *            the names of the steps this one waits for. They must have
+     *            been added already.
+     * @return this workflow.
+     */
+    public WorkflowBackgroundJob addStep(final String name, final BackgroundJob<?> job, final String... inputs) {
+        final int weight = job instanceof WeightedBackgroundJob ? ((WeightedBackgroundJob<?>) job).getWeight() : 1;
+        return add(name, weight, (monitor, results) -> job.work(monitor), job.getDescription(), inputs);
+    }
+
+    private synchronized WorkflowBackgroundJob add(final String name, final int weight, final Step<?> step,
+            final String stepDescription, final String[] inputs) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate step " + name);
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("negative weight for step " + name);
+        }
+        final Node node = new Node(name, step, weight, stepDescription, inputs.clone());
+        for (final String input : node.inputs) {
+            final Node dependency = nodes.get(input);
+            if (dependency == null) {
+                throw new IllegalArgumentException("step " + name + " depends on unknown step " + input);
+            }
+            dependency.dependents.add(node);
+        }
+        nodes.put(name, node);
+        return this;
+    }
+
+    @Override
+    public Result work(final BackgroundJobMonitor monitor) throws Exception {
+        // steps added from now on are not part of this run
+        final List<Node> all;
+        final Map<Node, List<Node>> dependents = new HashMap<Node, List<Node>>();
+        synchronized (this) {
+            all = new ArrayList<Node>(nodes.values());
+            for (final Node node : all) {
+                dependents.put(node, new ArrayList<Node>(node.dependents));
+            }
+        }
+        int total = 0;
+        for (final Node node : all) {
+            total += node.weight;
+        }
+        final AggregateProgress progress = new AggregateProgress(monitor, total * 100);
+        final Map<Node, AggregateProgress.Part> parts = new HashMap<Node, AggregateProgress.Part>();
+        for (final Node node : all) {
+            parts.put(node, progress.newPart(node.weight));
+        }
+
+        final long started = System.nanoTime();
+        final Map<String, Object> results = new LinkedHashMap<String, Object>();
+        final Map<String, Outcome> outcomes = new HashMap<String, Outcome>();
+        if (all.isEmpty()) {
+            return new Result(results, new HashMap<String, StepTiming>(), new ArrayList<String>(), 0);
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, all.size()), r -> {
+            final Thread thread = new Thread(r, "BackgroundJob Workflow-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CompletionService<Outcome> completion = new ExecutorCompletionService<Outcome>(pool);
+        final Map<Future<Outcome>, Node> running = new HashMap<Future<Outcome>, Node>();
+        final Map<Node, Integer> missingInputs = new HashMap<Node, Integer>();
+        try {
+            for (final Node node : all) {
+                missingInputs.put(node, node.inputs.length);
+                if (node.inputs.length == 0) {
+                    running.put(submit(completion, node, results, parts.get(node), monitor), node);
+                }
+            }
+
+            while (!running.isEmpty()) {
+                final Future<Outcome> future;
+                try {
+                    future = completion.take();
+                } catch (final InterruptedException e) {
+                    if (monitor.isAborting()) {
+                        break;
+                    }
+                    throw e;
+                }
+                final Node node = running.remove(future);
+                final Outcome outcome;
+                try {
+                    outcome = future.get();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (monitor.isAborting() && (cause instanceof CancellationException || cause instanceof InterruptedException)) {
+                        continue;
+                    }
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+                results.put(node.name, outcome.value);
+                outcomes.put(node.name, outcome);
+                if (monitor.isAborting()) {
+                    continue;
+                }
+                // only this thread touches the bookkeeping, the results are
+                // published to the steps by submitting them
+                for (final Node dependent : dependents.get(node)) {
+                    final int missing = missingInputs.get(dependent) - 1;
+                    missingInputs.put(dependent, missing);
+                    if (missing == 0) {
+                        running.put(submit(completion, dependent, results, parts.get(dependent), monitor), dependent);
+                    }
+                }
+            }
+        } finally {
+            for (final Future<Outcome> future : running.keySet()) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+
+        final Result result = createResult(all, results, outcomes, started, System.nanoTime() - started);
+        monitor.log(BackgroundJobMonitor.Severity.INFO, result);
+        return result;
+    }
+
+    private Future<Outcome> submit(final CompletionService<Outcome> completion, final Node node,
+            final Map<String, Object> results, final AggregateProgress.Part part, final BackgroundJobMonitor monitor) {
+        final Map<String, Object> inputs = new HashMap<String, Object>();
+        for (final String input : node.inputs) {
+            inputs.put(input, results.get(input));
+        }
+        return completion.submit(new Callable<Outcome>() {
+
+            @Override
+            public Outcome call() throws Exception {
+                if (monitor.isAborting()) {
+                    throw new CancellationException("aborted before the step started");
+                }
+                currentSteps.add(node);
+                try {
+                    final long start = System.nanoTime();
+                    final Object value = node.step.work(part, Collections.unmodifiableMap(inputs));
+                    final long finish = System.nanoTime();
+                    part.done();
+                    return new Outcome(value, start, finish);
+                } finally {
+                    currentSteps.remove(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the chain of finished steps with the longest summed up duration.
+     * The steps are in topological order, so every step is visited after its
+     * inputs.
+     */
+    private static Result createResult(final List<Node> all, final Map<String, Object> results,
+            final Map<String, Outcome> outcomes, final long started, final long elapsedTime) {
+        final Map<String, StepTiming> timings = new HashMap<String, StepTiming>();
+        final Map<String, String> predecessors = new HashMap<String, String>();
+        String last = null;
+        for (final Node node : all) {
+            final Outcome outcome = outcomes.get(node.name);
+            if (outcome == null) {
+                continue;
+            }
+            String predecessor = null;
+            long inputTime = 0;
+            for (final String input : node.inputs) {
+                final StepTiming timing = timings.get(input);
+                if (timing != null && (predecessor == null || timing.getPathTime() > inputTime)) {
+                    predecessor = input;
+                    inputTime = timing.getPathTime();
+                }
+            }
+            final StepTiming timing = new StepTiming(outcome.start - started, outcome.finish - started,
+                    inputTime + outcome.finish - outcome.start);
+            timings.put(node.name, timing);
+            predecessors.put(node.name, predecessor);
+            if (last == null || timing.getPathTime() > timings.get(last).getPathTime()) {
+                last = node.name;
+            }
+        }
+        final LinkedList<String> criticalPath = new LinkedList<String>();
+        for (String step = last; step != null; step = predecessors.get(step)) {
+            criticalPath.addFirst(step);
+        }
+        return new Result(results, timings, criticalPath, elapsedTime);
+    }
+
+    @Override
+    public String getDescription() {
+        final StringBuilder running = new StringBuilder();
+        for (final Node node : currentSteps) {
+            running.append(running.length() == 0 ? "" : ", ").append(node.description);
+        }
+        return running.length() == 0 ? description : description + " / " + running;
+    }
+}
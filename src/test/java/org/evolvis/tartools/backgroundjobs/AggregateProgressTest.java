@@ -0,0 +1,145 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AggregateProgressTest {
+
+    private final AtomicInteger total = new AtomicInteger(-1);
+    private final List<Integer> reports = new ArrayList<Integer>();
+    private BackgroundJobMonitor monitor;
+
+    @Before
+    public void setUp() {
+        monitor = new BackgroundJobMonitor() {
+
+            @Override
+            public void log(final Severity severity, final Object message) {
+            }
+
+            @Override
+            public boolean isAborting() {
+                return false;
+            }
+
+            @Override
+            public String getScheduledJobId() {
+                return null;
+            }
+
+            @Override
+            public void announceTotal(final int totalItems) {
+                total.set(totalItems);
+            }
+
+            @Override
+            public void reportProgressIncrement(final int items) {
+                fail("only absolute reports expected");
+            }
+
+            @Override
+            public synchronized void reportProgressAbsolute(final int items) {
+                reports.add(items);
+            }
+        };
+    }
+
+    @Test
+    public void testWeightedParts() {
+        AggregateProgress progress = new AggregateProgress(monitor, 100);
+        assertEquals(100, total.get());
+        AggregateProgress.Part a = progress.newPart(1);
+        AggregateProgress.Part b = progress.newPart(3);
+        a.announceTotal(10);
+        a.reportProgressAbsolute(5);
+        assertEquals(0.125, progress.getFraction(), 1e-9);
+        b.announceTotal(4);
+        b.reportProgressIncrement(2);
+        assertEquals(0.5, progress.getFraction(), 1e-9);
+        a.done();
+        assertEquals(0.625, progress.getFraction(), 1e-9);
+        assertEquals(Integer.valueOf(62), reports.get(reports.size() - 1));
+    }
+
+    @Test
+    public void testLargeTotalsDoNotOverflow() {
+        AggregateProgress progress = new AggregateProgress(monitor, 100);
+        AggregateProgress.Part part = progress.newPart(1);
+        part.announceTotal(Integer.MAX_VALUE);
+        part.reportProgressAbsolute(Integer.MAX_VALUE / 2);
+        assertEquals(Integer.valueOf(49), reports.get(reports.size() - 1));
+        part.announceTotal(10_000_000_000L);
+        part.reportProgressAbsolute(9_000_000_000L);
+        assertEquals(Integer.valueOf(90), reports.get(reports.size() - 1));
+    }
+
+    @Test
+    public void testOnlyChangesAreReported() {
+        AggregateProgress progress = new AggregateProgress(monitor, 10);
+        AggregateProgress.Part part = progress.newPart(1);
+        part.announceTotal(1000);
+        for (int i = 0; i < 1000; i++) {
+            part.reportProgressIncrement(1);
+        }
+        assertEquals(11, reports.size());
+        assertEquals(Integer.valueOf(10), reports.get(10));
+    }
+
+    @Test
+    public void testConcurrentParts() throws Exception {
+        final AggregateProgress progress = new AggregateProgress(monitor, 1000);
+        final AggregateProgress.Part shared = progress.newPart(1);
+        shared.announceTotal(8 * 100_000);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final AggregateProgress.Part own = progress.newPart(1);
+            threads[i] = new Thread(() -> {
+                own.announceTotal(100_000);
+                for (int j = 0; j < 100_000; j++) {
+                    own.reportProgressIncrement(1);
+                    shared.reportProgressIncrement(1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1.0, progress.getFraction(), 1e-9);
+        assertEquals(Integer.valueOf(1000), reports.get(reports.size() - 1));
+    }
+}
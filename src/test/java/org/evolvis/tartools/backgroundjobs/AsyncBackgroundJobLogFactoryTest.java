@@ -0,0 +1,236 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobMonitor.Severity;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AsyncBackgroundJobLogFactoryTest {
+
+    @Test
+    public void testMessagesAreFormattedByTheWriter() throws Exception {
+        StringWriter out = new StringWriter();
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toWriter(out, 1024,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+        final List<Thread> formattedOn = new ArrayList<>();
+        BackgroundJobLog log = factory.createJobLog("job-1");
+        log.log(Severity.INFO, new Object() {
+            @Override
+            public String toString() {
+                formattedOn.add(Thread.currentThread());
+                return "lazy";
+            }
+        });
+        log.log(Severity.ERROR, new IllegalStateException("broken"));
+        log.close();
+        factory.close();
+
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertTrue(lines[0], lines[0].endsWith(" INFO:job-1: lazy"));
+        assertTrue(lines[1], lines[1].endsWith(" ERROR:job-1: java.lang.IllegalStateException: broken"));
+        assertEquals(1, formattedOn.size());
+        assertNotSame(Thread.currentThread(), formattedOn.get(0));
+        assertEquals(2, factory.getWrittenMessages());
+        assertEquals(0, factory.getDroppedMessages());
+    }
+
+    @Test
+    public void testConcurrentJobsToFiles() throws Exception {
+        Path dir = Files.createTempDirectory("logs");
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toJobFiles(dir, 64,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+        List<Thread> jobs = new ArrayList<>();
+        for (int j = 0; j < 4; j++) {
+            final BackgroundJobLog log = factory.createJobLog("job-" + j);
+            jobs.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    log.log(Severity.INFO, i);
+                }
+                log.close();
+            }));
+        }
+        for (Thread job : jobs) {
+            job.start();
+        }
+        for (Thread job : jobs) {
+            job.join();
+        }
+        factory.close();
+
+        assertEquals(40000, factory.getWrittenMessages());
+        for (int j = 0; j < 4; j++) {
+            Path file = dir.resolve("job-" + j + ".log");
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(10000, lines.size());
+            // in order per job
+            assertTrue(lines.get(9999).endsWith(": 9999"));
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        StringWriter out = new StringWriter() {
+            @Override
+            public void write(String str) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(str);
+            }
+        };
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toWriter(out, 4,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.DROP_INFO);
+        BackgroundJobLog log = factory.createJobLog("job");
+        log.log(Severity.INFO, "first");
+        blocked.await();
+        for (int i = 0; i < 10; i++) {
+            log.log(Severity.INFO, "dropped?");
+        }
+        assertEquals(6, factory.getDroppedMessages());
+        release.countDown();
+        log.log(Severity.ERROR, "never dropped");
+        factory.close();
+        assertTrue(out.toString().contains("never dropped"));
+        assertEquals(5 + 1, factory.getWrittenMessages());
+    }
+
+    @Test
+    public void testNullSeverityDoesNotCloseTheJob() throws Exception {
+        Path dir = Files.createTempDirectory("logs");
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toJobFiles(dir, 64,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+        BackgroundJobLog log = factory.createJobLog("job");
+        log.log(null, "without severity");
+        log.log(Severity.INFO, "after");
+        log.close();
+        factory.close();
+        assertEquals(2, factory.getWrittenMessages());
+        Path file = dir.resolve("job.log");
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(" null:job: without severity"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(" INFO:job: after"));
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testWriterSurvivesErrorFromMessage() throws Exception {
+        StringWriter out = new StringWriter();
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toWriter(out, 4,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+        BackgroundJobLog log = factory.createJobLog("job");
+        log.log(Severity.INFO, new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("broken toString");
+            }
+        });
+        // more than the ring holds, so BLOCK producers depend on the writer
+        for (int i = 0; i < 100; i++) {
+            log.log(Severity.INFO, "after " + i);
+        }
+        factory.close();
+        assertTrue(out.toString().contains("after 99"));
+        assertEquals(1, factory.getWriteFailures());
+        assertEquals(100, factory.getWrittenMessages());
+    }
+
+    @Test
+    public void testMessagesRacingCloseAreWrittenOrDropped() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toWriter(new StringWriter(), 1024,
+                    AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+            final BackgroundJobLog log = factory.createJobLog("job");
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) {
+                        log.log(Severity.INFO, i);
+                    }
+                });
+                producer.start();
+                producers.add(producer);
+            }
+            start.countDown();
+            factory.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertEquals(4 * 200, factory.getWrittenMessages() + factory.getDroppedMessages());
+        }
+    }
+
+    @Test
+    public void testRollingFile() throws IOException {
+        Path dir = Files.createTempDirectory("logs");
+        Path file = dir.resolve("jobs.log");
+        AsyncBackgroundJobLogFactory factory = AsyncBackgroundJobLogFactory.toRollingFile(file, 1000, 3, 64,
+                AsyncBackgroundJobLogFactory.OverflowPolicy.BLOCK);
+        BackgroundJobLog log = factory.createJobLog("job");
+        for (int i = 0; i < 100; i++) {
+            log.log(Severity.INFO, "message number " + i);
+        }
+        factory.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals("[jobs.log, jobs.log.1, jobs.log.2]", names.toString());
+        }
+        for (String name : new String[] { "jobs.log", "jobs.log.1", "jobs.log.2" }) {
+            assertTrue(Files.size(dir.resolve(name)) < 1100);
+            Files.delete(dir.resolve(name));
+        }
+        Files.delete(dir);
+    }
+}
@@ -31,7 +31,15 @@ import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -148,4 +156,362 @@ public class BackgroundJobSchedulerTest {
         }
         assertEquals(State.SUCCEEDED, executedJob.getState());
     }
+
+    @Test
+    public void testParallelExecution() throws Exception {
+        final int n = 4;
+        scheduler.setParallelism(n);
+        scheduler.setJobsToKeep(2);
+        final CountDownLatch allRunning = new CountDownLatch(n);
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            jobs.add(scheduler.schedule(new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) throws Exception {
+                    allRunning.countDown();
+                    // only succeeds if all jobs are running side by side
+                    return allRunning.await(10, TimeUnit.SECONDS) ? "parallel" : "serial";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "parallel";
+                }
+            }));
+        }
+        scheduler.ensureStarted();
+        for (BackgroundJobStatus<String> job : jobs) {
+            assertEquals("parallel", job.result());
+            job.join(0);
+            assertEquals(State.SUCCEEDED, job.getState());
+        }
+        synchronized (scheduler) {
+            while (!scheduler.isIdle()) {
+                scheduler.wait(100);
+            }
+        }
+        assertEquals(0, scheduler.getActiveJobs());
+        assertEquals(2, scheduler.getJobs().size());
+        scheduler.stop();
+    }
+
+    private static class PriorityJob implements BackgroundJob<String> {
+        private final String name;
+        private final int priority;
+
+        PriorityJob(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public String work(BackgroundJobMonitor monitor) {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        BackgroundJobStatus<String> low = scheduler.schedule(new PriorityJob("low", -1));
+        BackgroundJobStatus<String> normal = scheduler.schedule(new PriorityJob("normal", 0));
+        BackgroundJobStatus<String> high = scheduler.schedule(new PriorityJob("high", 10));
+        BackgroundJobStatus<String> high2 = scheduler.schedule(new PriorityJob("high2", 10));
+        assertEquals(10, high.getPriority());
+        assertSame(high, scheduler.executeNext());
+        assertSame(high2, scheduler.executeNext());
+        assertSame(normal, scheduler.executeNext());
+        assertSame(low, scheduler.executeNext());
+        low.join(0);
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        scheduler.setAgingInterval(1);
+        BackgroundJobStatus<String> old = scheduler.schedule(new PriorityJob("old", 0));
+        Thread.sleep(50);
+        // has waited for more than 10 aging intervals
+        BackgroundJobStatus<String> urgent = scheduler.schedule(new PriorityJob("urgent", 10));
+        assertSame(old, scheduler.executeNext());
+        assertSame(urgent, scheduler.executeNext());
+        urgent.join(0);
+    }
+
+    @Test
+    public void testAbortQueuedJob() throws Exception {
+        BackgroundJobStatus<String> first = scheduler.schedule(new PriorityJob("first", 0));
+        BackgroundJobStatus<String> second = scheduler.schedule(new PriorityJob("second", 0));
+        first.abort();
+        assertEquals(State.ABORTED, first.getState());
+        assertSame(second, scheduler.executeNext());
+        assertTrue(scheduler.queue.isEmpty());
+        second.join(0);
+    }
+
+    @Test
+    public void testAbortAll() throws Exception {
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            jobs.add(scheduler.schedule(new PriorityJob(i % 10 == 0 ? "keep" : "drop", 0)));
+        }
+        assertEquals(45000, scheduler.abortAll(info -> "drop".equals(info.getDescription())));
+        assertEquals(5000, scheduler.queue.size());
+        assertFalse(scheduler.isIdle());
+        for (int i = 0; i < jobs.size(); i++) {
+            assertEquals(i % 10 == 0 ? State.SCHEDULED : State.ABORTED, jobs.get(i).getState());
+        }
+        assertSame(jobs.get(0), scheduler.executeNext());
+        assertSame(jobs.get(10), scheduler.executeNext());
+        assertEquals(4998, scheduler.abortAll(info -> true));
+        assertTrue(scheduler.queue.isEmpty());
+        jobs.get(10).join(0);
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void testAbortAllBetweenPollAndStart() throws Exception {
+        BackgroundJobStatus<String> job = scheduler.schedule(new PriorityJob("taken", 0));
+        // what executeNext() does before it starts the job
+        synchronized (scheduler) {
+            assertSame(job, scheduler.queue.poll());
+        }
+        assertEquals(1, scheduler.abortAll(info -> true));
+        assertEquals(State.ABORTED, job.getState());
+        assertFalse(((ScheduledJob<String>) job).execute());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        BackgroundJobStatus<String> first = scheduler.schedule(new PriorityJob("first", 0));
+        BackgroundJobStatus<String> second = scheduler.schedule(new PriorityJob("second", 0));
+        scheduler.schedule(new PriorityJob("third", 0)).abort();
+        SchedulerMetrics metrics = scheduler.getMetrics();
+        assertEquals(2, metrics.getQueueDepth());
+        assertSame(first, scheduler.executeNext());
+        assertSame(second, scheduler.executeNext());
+        first.join(0);
+        second.join(0);
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(0, metrics.getActiveWorkers());
+
+        SchedulerMetrics.JobClassMetrics total = metrics.getTotal();
+        assertEquals(3, total.getSubmitted());
+        assertEquals(2, total.getStarted());
+        assertEquals(2, total.getSucceeded());
+        assertEquals(1, total.getAborted());
+        assertEquals(0, total.getFailed());
+        assertEquals(3, total.getCompleted());
+        assertEquals(2, total.getQueueWait().getCount());
+        assertEquals(2, total.getExecutionTime().getCount());
+        assertEquals(0, total.getAbortingTime().getCount());
+        assertEquals(3, metrics.getJobClassMetrics().get(PriorityJob.class).getSubmitted());
+    }
+
+    private List<BackgroundJobStatus<String>> runJobs(int count) throws InterruptedException {
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            jobs.add(scheduler.schedule("job-" + i, new PriorityJob("job-" + i, 0)));
+        }
+        for (int i = 0; i < count; i++) {
+            scheduler.executeNext().join(0);
+        }
+        return jobs;
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        scheduler.setJobsToKeep(3);
+        BackgroundJobStatus<String> waiting = scheduler.schedule("waiting", new PriorityJob("waiting", -1));
+        List<BackgroundJobStatus<String>> jobs = runJobs(5);
+        assertNull(scheduler.getJob("job-1"));
+        assertEquals("job-4", scheduler.getJob("job-4").getId());
+        assertEquals(Arrays.asList("waiting", "job-2", "job-3", "job-4"), ids(scheduler.getJobs()));
+
+        scheduler.setJobRetentionBytes(2 * JobRegistry.estimateSize(jobs.get(4)));
+        assertEquals(3, scheduler.getJobs().size());
+        assertNull(scheduler.getJob("job-2"));
+
+        scheduler.setJobRetentionTime(1);
+        Thread.sleep(5);
+        assertNull(scheduler.getJob("job-4"));
+        assertEquals(Collections.singletonList(waiting), new ArrayList<>(scheduler.getJobs()));
+    }
+
+    @Test
+    public void testConcurrentEvictionKeepsTheLimit() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            scheduler = new BackgroundJobScheduler();
+            scheduler.setJobsToKeep(200);
+            runJobs(200);
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // one job over the limit at a time, for every thread to see
+                    for (int keep = 199; keep >= 100; keep--) {
+                        scheduler.setJobsToKeep(keep);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(100, scheduler.getJobs().size());
+        }
+    }
+
+    private static List<String> ids(Collection<BackgroundJobStatus<?>> jobs) {
+        List<String> ids = new ArrayList<>();
+        for (BackgroundJobStatus<?> job : jobs) {
+            ids.add(job.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testFinishedJobSummaries() throws Exception {
+        scheduler.setJobsToKeep(100);
+        scheduler.setResultsToKeep(2);
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(scheduler.schedule("job-" + i, new PriorityJob("job-" + i, 0)));
+            scheduler.executeNext().join(0);
+            // results are kept in the order the jobs are released in
+            awaitReleased("job-" + i);
+        }
+
+        BackgroundJobStatus<?> oldest = scheduler.getJob("job-0");
+        assertTrue(oldest instanceof FinishedJob);
+        assertEquals(State.SUCCEEDED, oldest.getState());
+        assertEquals("job-0", oldest.getDescription());
+        assertEquals(PriorityJob.class, oldest.getJobClass());
+        assertEquals(jobs.get(0).getStateTimestamp(State.RUNNING), oldest.getStateTimestamp(State.RUNNING));
+        try {
+            oldest.result();
+            fail();
+        } catch (IllegalStateException e) {
+            ;
+        }
+        // still available through the original handle
+        assertEquals("job-0", jobs.get(0).result());
+        assertEquals("job-4", scheduler.getJob("job-4").result());
+        assertEquals("job-3", scheduler.getJob("job-3").result());
+    }
+
+    @Test
+    public void testResultsEvictedBySize() throws Exception {
+        scheduler.setJobsToKeep(100);
+        scheduler.setResultsToKeep(100);
+        // 1000 per character, so that the overhead does not matter
+        scheduler.setResultWeigher(result -> 1000L * result.toString().length());
+        scheduler.setResultRetentionBytes(12000);
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (String name : new String[] { "aaaaa", "bbbbb", "ccccc", "ddddd" }) {
+            jobs.add(scheduler.schedule(name, new PriorityJob(name, 0)));
+            scheduler.executeNext().join(0);
+            awaitReleased(name);
+        }
+        assertResultDropped("aaaaa");
+        assertResultDropped("bbbbb");
+        assertEquals("ccccc", scheduler.getJob("ccccc").result());
+        assertEquals("ddddd", scheduler.getJob("ddddd").result());
+
+        // too large to be kept at all, which leaves the others alone
+        BackgroundJobStatus<String> huge = scheduler.schedule("huge", new PriorityJob(new String(new char[20]), 0));
+        scheduler.executeNext().join(0);
+        awaitReleased(huge.getId());
+        assertResultDropped("huge");
+        assertEquals("ccccc", scheduler.getJob("ccccc").result());
+        assertEquals("ddddd", scheduler.getJob("ddddd").result());
+    }
+
+    @Test
+    public void testResultCacheSkipsRemovedOutcomes() {
+        ResultCache cache = new ResultCache(3);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("job-" + i, i, "result " + i, null);
+            if (i % 2 == 0) {
+                cache.remove("job-" + i, i);
+            }
+        }
+        assertEquals(3, cache.size());
+        assertNull(cache.get("job-998", 998));
+        assertEquals("result 999", cache.get("job-999", 999).result);
+        assertEquals("result 997", cache.get("job-997", 997).result);
+        assertEquals("result 995", cache.get("job-995", 995).result);
+        assertNull(cache.get("job-993", 993));
+    }
+
+    /** without anything else happening in the scheduler */
+    private void awaitReleased(String id) throws InterruptedException {
+        // the future completes just after the job signalled it finished
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(scheduler.getJob(id) instanceof FinishedJob)) {
+            assertTrue(id, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void assertResultDropped(String id) throws Exception {
+        try {
+            scheduler.getJob(id).result();
+            fail(id);
+        } catch (IllegalStateException e) {
+            ;
+        }
+    }
+
+    @Test
+    public void testReleasedJobsKeepTheirOutcome() throws Exception {
+        ScheduledJob<String> succeeded = (ScheduledJob<String>) runJobs(1).get(0);
+        ScheduledJob<String> failed = (ScheduledJob<String>) scheduler.schedule(new PriorityJob(null, 0) {
+            @Override
+            public String work(BackgroundJobMonitor monitor) {
+                throw new IllegalStateException("failed");
+            }
+        });
+        ScheduledJob<String> aborted = (ScheduledJob<String>) scheduler.schedule(new PriorityJob("aborted", 0));
+        aborted.abort();
+        scheduler.executeNext().join(0);
+
+        for (ScheduledJob<String> job : Arrays.asList(succeeded, failed, aborted)) {
+            // the future completes just after the job signalled it finished
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!job.release()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+        assertEquals("job-0", succeeded.result());
+        try {
+            failed.result();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+        try {
+            aborted.result();
+            fail();
+        } catch (CancellationException e) {
+            ;
+        }
+        assertEquals(State.FAILED, failed.getState());
+    }
 }
@@ -112,4 +112,27 @@ public class CompositeBackgroundJobTest {
         assertEquals("reportProgressAbsolute: 0", log.get(1));
     }
 
+    @Test
+    public void subjobWithLargeTotal() throws Exception {
+        final CompositeBackgroundJob job = new CompositeBackgroundJob("composite", new BackgroundJob<String>() {
+            @Override
+            public String work(final BackgroundJobMonitor monitor) throws Exception {
+                monitor.announceTotal(Integer.MAX_VALUE);
+                monitor.reportProgressAbsolute(Integer.MAX_VALUE / 2);
+                return "done";
+            }
+
+            @Override
+            public String getDescription() {
+                return "large";
+            }
+        }, new ZeroItemsJob());
+        job.work(monitor);
+        assertEquals("announceTotal: 200", log.get(0));
+        assertEquals("reportProgressAbsolute: 0", log.get(1));
+        assertEquals("reportProgressAbsolute: 49", log.get(2));
+        assertEquals("reportProgressAbsolute: 100", log.get(3));
+        assertEquals(4, log.size());
+    }
+
 }
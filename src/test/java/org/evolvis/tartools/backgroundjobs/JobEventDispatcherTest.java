@@ -0,0 +1,225 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.evolvis.tartools.backgroundjobs.JobEventDispatcher.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JobEventDispatcherTest {
+    private BackgroundJobScheduler scheduler;
+    private JobEventDispatcher dispatcher;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Thread> listenerThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+    private final JobListener slowListener = new JobListener() {
+        @Override
+        public void stateChanged(JobEvent e) {
+            listenerThreads.add(Thread.currentThread());
+            events.add(e.getOldState() + " -> " + e.getNewState());
+            if (e.getNewState() == State.STARTING) {
+                try {
+                    release.await();
+                } catch (InterruptedException e1) {
+                    throw new RuntimeException(e1);
+                }
+            }
+        }
+
+        @Override
+        public void progressInfoUpdated(JobEvent e) {
+            events.add("progress " + e.getWorkDone());
+        }
+    };
+
+    private final BackgroundJob<String> reportingJob = new BackgroundJob<String>() {
+        @Override
+        public String work(BackgroundJobMonitor monitor) {
+            monitor.announceTotal(100);
+            for (int i = 0; i < 100; i++) {
+                monitor.reportProgressIncrement(1);
+            }
+            return "done";
+        }
+
+        @Override
+        public String getDescription() {
+            return "reporting job";
+        }
+    };
+
+    @Before
+    public void setup() {
+        scheduler = new BackgroundJobScheduler();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        scheduler.stop();
+        dispatcher.shutdown();
+    }
+
+    private void awaitDelivery(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getDeliveredEvents() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockJob() throws Exception {
+        dispatcher = new JobEventDispatcher(2, 1000, OverflowPolicy.BLOCK);
+        scheduler.setListenerDispatcher(dispatcher);
+        BackgroundJobStatus<String> job = scheduler.schedule(reportingJob);
+        job.addJobListener(slowListener);
+        scheduler.ensureStarted();
+        // finishes while the listener is still stuck on the first event
+        assertEquals("done", job.result());
+        job.join(0);
+        assertEquals(State.SUCCEEDED, job.getState());
+        while (events.isEmpty()) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, events.size());
+        release.countDown();
+        awaitDelivery(104);
+        assertEquals(0, dispatcher.getQueuedEvents());
+        assertEquals(104, events.size());
+        assertEquals("SCHEDULED -> STARTING", events.get(0));
+        assertEquals("STARTING -> RUNNING", events.get(1));
+        for (int i = 0; i <= 100; i++) {
+            assertEquals("progress " + i, events.get(i + 2));
+        }
+        assertEquals("RUNNING -> SUCCEEDED", events.get(103));
+        for (Thread thread : listenerThreads) {
+            assertTrue(thread.getName().startsWith("BackgroundJob Listener-"));
+        }
+        assertTrue(dispatcher.getMaxDispatchLag() >= dispatcher.getMeanDispatchLag());
+    }
+
+    @Test
+    public void testListenerReadingStateWhileBufferIsFull() throws Exception {
+        dispatcher = new JobEventDispatcher(1, 1, OverflowPolicy.BLOCK);
+        scheduler.setListenerDispatcher(dispatcher);
+        BackgroundJobStatus<String> job = scheduler.schedule(new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) {
+                return "done";
+            }
+
+            @Override
+            public String getDescription() {
+                return "quick job";
+            }
+        });
+        job.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+                try {
+                    // long enough for the job to fill the buffer
+                    Thread.sleep(100);
+                } catch (InterruptedException e1) {
+                    throw new RuntimeException(e1);
+                }
+                e.getSource().getState();
+                events.add(String.valueOf(e.getNewState()));
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+            }
+        }, JobEvent.Type.STATE_CHANGED);
+        scheduler.ensureStarted();
+        awaitDelivery(3);
+        assertEquals(3, dispatcher.getDeliveredEvents());
+        assertEquals(State.SUCCEEDED, job.getState());
+        assertEquals("[STARTING, RUNNING, SUCCEEDED]", events.toString());
+    }
+
+    @Test
+    public void testRejectedDeliveryRunsInline() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        dispatcher = new JobEventDispatcher(executor, 1000, OverflowPolicy.BLOCK);
+        scheduler.setListenerDispatcher(dispatcher);
+        BackgroundJobStatus<String> job = scheduler.schedule(reportingJob);
+        job.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+                events.add(e.getOldState() + " -> " + e.getNewState());
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                events.add("progress " + e.getWorkDone());
+            }
+        });
+        scheduler.ensureStarted();
+        job.join(0);
+        awaitDelivery(104);
+        // none of them got stuck in the lane
+        assertEquals(104, events.size());
+        assertEquals("RUNNING -> SUCCEEDED", events.get(103));
+        assertEquals(0, dispatcher.getQueuedEvents());
+    }
+
+    @Test
+    public void testDropProgressWhenFull() throws Exception {
+        dispatcher = new JobEventDispatcher(1, 3, OverflowPolicy.DROP_PROGRESS);
+        scheduler.setListenerDispatcher(dispatcher);
+        BackgroundJobStatus<String> job = scheduler.schedule(reportingJob);
+        job.addJobListener(slowListener);
+        scheduler.ensureStarted();
+        while (dispatcher.getDroppedEvents() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        job.join(0);
+        assertTrue(dispatcher.getDroppedEvents() > 0);
+        awaitDelivery(104 - dispatcher.getDroppedEvents());
+        // no state change was lost
+        assertEquals("SCHEDULED -> STARTING", events.get(0));
+        assertEquals("STARTING -> RUNNING", events.get(1));
+        assertEquals("RUNNING -> SUCCEEDED", events.get(events.size() - 1));
+        assertEquals(104 - dispatcher.getDroppedEvents(), events.size());
+    }
+}
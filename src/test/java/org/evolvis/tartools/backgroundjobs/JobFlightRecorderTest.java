@@ -0,0 +1,121 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JobFlightRecorderTest {
+    private static final String PREFIX = "org.evolvis.tartools.backgroundjobs.";
+
+    @Test
+    public void testLifecycleEvents() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        Path file = Files.createTempFile("jobs", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "JobSubmitted", "JobDequeued", "JobExecution", "JobFinished" }) {
+                recording.enable(PREFIX + name).withThreshold(Duration.ZERO);
+            }
+            recording.enable(PREFIX + "JobProgress").withPeriod(Duration.ofMillis(10));
+            recording.start();
+            BackgroundJobStatus<String> job = scheduler.schedule("job-1", new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) throws Exception {
+                    monitor.announceTotal(2);
+                    monitor.reportProgressIncrement(1);
+                    Thread.sleep(200);
+                    monitor.reportProgressIncrement(1);
+                    return "done";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "recorded job";
+                }
+            });
+            scheduler.schedule("job-2", new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) {
+                    return "never";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "aborted job";
+                }
+            }).abort();
+            scheduler.executeNext();
+            job.join(0);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        Map<String, RecordedEvent> byName = new HashMap<>();
+        int progressSamples = 0;
+        for (RecordedEvent event : events) {
+            if (!"job-1".equals(event.getString("jobId"))) {
+                continue;
+            }
+            String name = event.getEventType().getName().substring(PREFIX.length());
+            if (name.equals("JobProgress")) {
+                progressSamples++;
+                assertEquals(2, event.getLong("workTotal"));
+            }
+            byName.put(name, event);
+        }
+        assertTrue(byName.keySet().containsAll(List.of("JobSubmitted", "JobDequeued", "JobExecution", "JobFinished")));
+        assertEquals("recorded job", byName.get("JobSubmitted").getString("description"));
+        assertEquals("SUCCEEDED", byName.get("JobExecution").getString("state"));
+        assertTrue(byName.get("JobExecution").getDuration().toMillis() >= 200);
+        assertEquals("SUCCEEDED", byName.get("JobFinished").getString("state"));
+        assertTrue(byName.get("JobFinished").getDuration("executionTime").toMillis() >= 200);
+        assertTrue(progressSamples > 0);
+
+        boolean abortedRecorded = false;
+        for (RecordedEvent event : events) {
+            if ("job-2".equals(event.getString("jobId")) && event.getEventType().getName().equals(PREFIX + "JobFinished")) {
+                assertEquals("ABORTED", event.getString("state"));
+                abortedRecorded = true;
+            }
+        }
+        assertTrue(abortedRecorded);
+    }
+}
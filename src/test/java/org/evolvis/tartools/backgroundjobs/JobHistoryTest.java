@@ -0,0 +1,173 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JobHistoryTest {
+    private Path file;
+    private JobHistory history;
+
+    private static class FailingJob implements BackgroundJob<Void> {
+        @Override
+        public Void work(BackgroundJobMonitor monitor) {
+            monitor.announceTotal(10);
+            monitor.reportProgressAbsolute(3);
+            throw new IllegalStateException("expected");
+        }
+
+        @Override
+        public String getDescription() {
+            return "failing job";
+        }
+    }
+
+    private static class SleepingJob implements BackgroundJob<Void> {
+        @Override
+        public Void work(BackgroundJobMonitor monitor) throws InterruptedException {
+            Thread.sleep(20);
+            return null;
+        }
+
+        @Override
+        public String getDescription() {
+            return "sleeping job";
+        }
+    }
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("history", ".bin");
+        Files.delete(file);
+        history = new JobHistory(file, 4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        history.close();
+        Files.deleteIfExists(file);
+    }
+
+    private void run(BackgroundJobScheduler scheduler, String id, BackgroundJob<?> job) throws InterruptedException {
+        scheduler.schedule(id, job);
+        scheduler.executeNext().join(0);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        long start = System.currentTimeMillis();
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        scheduler.setJobLogFactory(id -> new BackgroundJobLog() {
+            @Override
+            public void log(BackgroundJobMonitor.Severity severity, Object message) {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        scheduler.setJobHistory(history);
+        run(scheduler, "sleeping", new SleepingJob());
+        run(scheduler, "failing", new FailingJob());
+        scheduler.schedule("aborted", new SleepingJob()).abort();
+
+        final List<String> ids = new ArrayList<>();
+        assertEquals(3, history.query(start, Long.MAX_VALUE, null, null, entry -> ids.add(entry.getId())));
+        assertEquals("[sleeping, failing, aborted]", ids.toString());
+
+        assertEquals(1, history.query(start, Long.MAX_VALUE, SleepingJob.class, State.SUCCEEDED, entry -> {
+            assertEquals("sleeping", entry.getId());
+            assertTrue(SleepingJob.class.getName().endsWith(entry.getJobClassName()));
+            assertTrue(entry.getExecutionTime() >= 20000000L);
+            assertTrue(entry.getQueueWait() >= 0);
+            assertTrue(entry.getFinishedAt() >= entry.getScheduledAt());
+        }));
+        assertEquals(1, history.query(start, Long.MAX_VALUE, FailingJob.class, null, entry -> {
+            assertEquals(State.FAILED, entry.getState());
+            assertEquals(3, entry.getWorkDone());
+            assertEquals(10, entry.getWorkTotal());
+        }));
+        assertEquals(1, history.query(start, Long.MAX_VALUE, null, State.ABORTED, entry -> {
+            assertEquals(-1, entry.getQueueWait());
+            assertEquals(-1, entry.getExecutionTime());
+        }));
+        assertEquals(0, history.query(0, start, null, null, entry -> fail()));
+    }
+
+    @Test
+    public void testRollingAndReopen() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        scheduler.setJobHistory(history);
+        for (int i = 0; i < 6; i++) {
+            scheduler.schedule("job-" + i, new SleepingJob()).abort();
+        }
+        history.close();
+        history = new JobHistory(file, 4);
+        assertEquals(6, history.getRecordCount());
+        final List<String> ids = new ArrayList<>();
+        history.query(0, Long.MAX_VALUE, null, null, entry -> ids.add(entry.getId()));
+        assertEquals("[job-2, job-3, job-4, job-5]", ids.toString());
+        final long size = Files.size(file);
+        try {
+            new JobHistory(file, 5);
+            fail();
+        } catch (IOException e) {
+            ;
+        }
+        assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    public void testForeignFileIsNotTouched() throws Exception {
+        Path other = Files.createTempFile("not-a-history", ".txt");
+        try {
+            Files.write(other, "some text".getBytes(StandardCharsets.UTF_8));
+            try {
+                new JobHistory(other, 4);
+                fail();
+            } catch (IOException e) {
+                ;
+            }
+            assertEquals("some text", new String(Files.readAllBytes(other), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(other);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JobJournalTest {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private static class EchoJob implements BackgroundJobWithProperties<String> {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+        private Properties properties;
+
+        EchoJob(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void setProperties(Properties properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public String work(BackgroundJobMonitor monitor) throws Exception {
+            if ("true".equals(properties.getProperty("block"))) {
+                started.countDown();
+                release.await();
+            }
+            return properties.getProperty("value");
+        }
+
+        @Override
+        public String getDescription() {
+            return "echo " + properties.getProperty("value");
+        }
+    }
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("journal");
+        file = dir.resolve("jobs.journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    private JobJournal open() throws IOException {
+        JobJournal journal = new JobJournal(file);
+        journal.registerFactory("echo", () -> new EchoJob(started, release));
+        return journal;
+    }
+
+    private static Properties properties(String value, boolean block) {
+        Properties properties = new Properties();
+        properties.setProperty("value", value);
+        properties.setProperty("block", Boolean.toString(block));
+        return properties;
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        BackgroundJobStatus<?> done = scheduler.scheduleDurable("echo", properties("done", false));
+        BackgroundJobStatus<?> running = scheduler.scheduleDurable("echo", properties("running", true));
+        BackgroundJobStatus<?> waiting = scheduler.scheduleDurable("echo", properties("waiting", false));
+        assertSame(done, scheduler.executeNext());
+        done.join(0);
+        assertEquals("done", done.result());
+        assertSame(running, scheduler.executeNext());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the JVM dies
+        journal.close();
+
+        journal = open();
+        List<JobJournal.RecoveredJob> unfinished = journal.getUnfinishedJobs();
+        assertEquals(2, unfinished.size());
+        assertEquals(running.getId(), unfinished.get(0).getId());
+        assertEquals(State.RUNNING, unfinished.get(0).getLastState());
+        assertEquals(waiting.getId(), unfinished.get(1).getId());
+        assertTrue(unfinished.get(1).isPending());
+
+        BackgroundJobScheduler restarted = new BackgroundJobScheduler();
+        restarted.setJournal(journal);
+        List<JobJournal.RecoveredJob> interrupted = restarted.recover();
+        assertEquals(1, interrupted.size());
+        assertEquals("running", interrupted.get(0).getProperties().getProperty("value"));
+        assertTrue(restarted.recover().isEmpty());
+        BackgroundJobStatus<?> recovered = restarted.executeNext();
+        assertEquals(waiting.getId(), recovered.getId());
+        recovered.join(0);
+        assertEquals("waiting", recovered.result());
+        journal.close();
+
+        journal = open();
+        assertTrue(journal.getUnfinishedJobs().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        scheduler.scheduleDurable("echo", properties("waiting", false));
+        journal.close();
+        Files.write(file, new byte[] { 0, 0, 0, 42, 1, 2 }, StandardOpenOption.APPEND);
+
+        journal = open();
+        assertEquals(1, journal.getUnfinishedJobs().size());
+        journal.close();
+        // and gone once compacted
+        JobJournal reopened = open();
+        assertEquals(journal.getUnfinishedJobs().get(0).getId(), reopened.getUnfinishedJobs().get(0).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void testConcurrentSubmissions() throws Exception {
+        final BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        ExecutorService submitters = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(submitters.submit(() -> {
+                for (int i = 0; i < 250; i++) {
+                    scheduler.scheduleDurable("echo", properties(thread + "-" + i, false));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        submitters.shutdown();
+        journal.close();
+
+        journal = open();
+        assertEquals(2000, journal.getUnfinishedJobs().size());
+        journal.close();
+    }
+
+    @Test
+    public void testRunningIsOnDiskBeforeWorkStarts() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        BackgroundJobStatus<?> running = scheduler.scheduleDurable("echo", properties("running", true));
+        assertSame(running, scheduler.executeNext());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // what a crash would leave behind right now
+        Path copy = dir.resolve("copy.journal");
+        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        try (JobJournal crashed = new JobJournal(copy)) {
+            assertEquals(State.RUNNING, crashed.getUnfinishedJobs().get(0).getLastState());
+            assertFalse(crashed.getUnfinishedJobs().get(0).isPending());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+        release.countDown();
+        running.join(0);
+        journal.close();
+    }
+
+    @Test
+    public void testJobFailsIfRunningCannotBeRecorded() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        BackgroundJobStatus<?> job = scheduler.scheduleDurable("echo", properties("lost", true));
+        journal.close();
+        assertSame(job, scheduler.executeNext());
+        job.join(0);
+        assertEquals(State.FAILED, job.getState());
+        try {
+            job.result();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        // the work never started
+        assertEquals(1, started.getCount());
+    }
+
+    @Test
+    public void testBatchSubmission() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        scheduler.setJournal(journal);
+        List<Properties> batch = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            batch.add(properties(Integer.toString(i), false));
+        }
+        List<BackgroundJobStatus<?>> jobs = scheduler.scheduleDurable("echo", batch);
+        assertEquals(10000, jobs.size());
+        journal.close();
+
+        journal = open();
+        assertEquals(10000, journal.getUnfinishedJobs().size());
+        assertEquals(jobs.get(9999).getId(), journal.getUnfinishedJobs().get(9999).getId());
+        assertEquals("9999", journal.getUnfinishedJobs().get(9999).getProperties().getProperty("value"));
+        journal.close();
+    }
+
+    @Test
+    public void testCompactionWhileOpen() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        JobJournal journal = open();
+        journal.setCompactionThreshold(4096);
+        scheduler.setJournal(journal);
+        // never runs
+        BackgroundJobScheduler idle = new BackgroundJobScheduler();
+        idle.setJournal(journal);
+        BackgroundJobStatus<?> waiting = idle.scheduleDurable("echo", properties("waiting", false));
+        for (int i = 0; i < 500; i++) {
+            scheduler.scheduleDurable("echo", properties(Integer.toString(i), false));
+            BackgroundJobStatus<?> job = scheduler.executeNext();
+            job.join(0);
+        }
+        journal.close();
+        assertTrue(Files.size(file) < 8192);
+
+        journal = open();
+        assertEquals(1, journal.getUnfinishedJobs().size());
+        assertEquals(waiting.getId(), journal.getUnfinishedJobs().get(0).getId());
+        journal.close();
+    }
+}
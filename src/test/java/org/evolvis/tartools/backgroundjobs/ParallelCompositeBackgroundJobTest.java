@@ -0,0 +1,231 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelCompositeBackgroundJobTest {
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger progress = new AtomicInteger();
+    private volatile boolean aborting;
+    private BackgroundJobMonitor monitor;
+
+    private static class Step implements BackgroundJob<String> {
+        private final String name;
+        private final CyclicBarrier barrier;
+
+        Step(String name, CyclicBarrier barrier) {
+            this.name = name;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public String work(BackgroundJobMonitor monitor) throws Exception {
+            monitor.announceTotal(10);
+            for (int i = 0; i < 10; i++) {
+                monitor.reportProgressIncrement(1);
+            }
+            if (barrier != null) {
+                // only passes if all steps run at the same time
+                barrier.await(5, TimeUnit.SECONDS);
+            }
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        monitor = new BackgroundJobMonitor() {
+
+            @Override
+            public void log(final Severity severity, final Object message) {
+            }
+
+            @Override
+            public boolean isAborting() {
+                return aborting;
+            }
+
+            @Override
+            public String getScheduledJobId() {
+                return null;
+            }
+
+            @Override
+            public void announceTotal(final int totalItems) {
+                total.set(totalItems);
+            }
+
+            @Override
+            public void reportProgressIncrement(final int items) {
+                progress.addAndGet(items);
+            }
+
+            @Override
+            public void reportProgressAbsolute(final int items) {
+                progress.set(items);
+            }
+        };
+    }
+
+    @Test
+    public void testStepsRunConcurrently() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        ParallelCompositeBackgroundJob job = new ParallelCompositeBackgroundJob("composite", 3,
+                new Step("a", barrier), new WeightedBackgroundJob<>(new Step("b", barrier), 3), new Step("c", barrier));
+        assertEquals(Arrays.asList("a", "b", "c"), job.work(monitor));
+        assertEquals(500, total.get());
+        assertEquals(500, progress.get());
+    }
+
+    @Test
+    public void testBoundedParallelism() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        BackgroundJob<?>[] steps = new BackgroundJob<?>[10];
+        for (int i = 0; i < steps.length; i++) {
+            final int n = i;
+            steps[i] = new BackgroundJob<Integer>() {
+                @Override
+                public Integer work(BackgroundJobMonitor monitor) throws Exception {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return n;
+                }
+
+                @Override
+                public String getDescription() {
+                    return "step " + n;
+                }
+            };
+        }
+        List<?> results = new ParallelCompositeBackgroundJob("composite", 2, steps).work(monitor);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), results);
+        assertTrue(maxRunning.get() <= 2);
+        assertEquals(1000, progress.get());
+    }
+
+    @Test
+    public void testFailureCancelsOtherSteps() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        BackgroundJob<String> blocking = new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "never";
+            }
+
+            @Override
+            public String getDescription() {
+                return "blocking";
+            }
+        };
+        BackgroundJob<String> failing = new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) throws Exception {
+                started.await();
+                throw new IllegalStateException("failed");
+            }
+
+            @Override
+            public String getDescription() {
+                return "failing";
+            }
+        };
+        try {
+            new ParallelCompositeBackgroundJob("composite", 2, blocking, failing).work(monitor);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAbortStopsRunningSteps() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicInteger stopped = new AtomicInteger();
+        BackgroundJob<?>[] steps = new BackgroundJob<?>[3];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) throws Exception {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10000);
+                    } finally {
+                        stopped.incrementAndGet();
+                    }
+                    return "never";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "sleeping";
+                }
+            };
+        }
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        BackgroundJobStatus<List<?>> status = scheduler.schedule(new ParallelCompositeBackgroundJob("composite", 2, steps));
+        scheduler.executeNext();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        status.abort();
+        status.join(5000);
+        assertEquals(State.ABORTED, status.getState());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stopped.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, stopped.get());
+    }
+}
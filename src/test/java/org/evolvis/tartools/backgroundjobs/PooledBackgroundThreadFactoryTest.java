@@ -0,0 +1,177 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PooledBackgroundThreadFactoryTest {
+    private BackgroundJobScheduler scheduler;
+    private PooledBackgroundThreadFactory threadFactory;
+
+    @Before
+    public void setup() {
+        scheduler = new BackgroundJobScheduler();
+        threadFactory = new PooledBackgroundThreadFactory(2);
+        scheduler.setThreadFactory(threadFactory);
+        scheduler.setParallelism(2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        scheduler.stop();
+        threadFactory.shutdown();
+    }
+
+    @Test
+    public void testWorkersAreReused() throws Exception {
+        final Set<Thread> workers = Collections.synchronizedSet(new HashSet<Thread>());
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            jobs.add(scheduler.schedule(new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) {
+                    workers.add(Thread.currentThread());
+                    return "done";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "short job";
+                }
+            }));
+        }
+        scheduler.ensureStarted();
+        for (BackgroundJobStatus<String> job : jobs) {
+            job.join(0);
+            assertEquals("done", job.result());
+            assertEquals(State.SUCCEEDED, job.getState());
+        }
+        assertTrue(workers.size() <= 2);
+    }
+
+    @Test
+    public void testAbortWhileWaitingForWorker() throws Exception {
+        scheduler.setParallelism(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch busy = new CountDownLatch(2);
+        BackgroundJob<String> blocking = new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) throws Exception {
+                busy.countDown();
+                release.await();
+                return "blocked";
+            }
+
+            @Override
+            public String getDescription() {
+                return "blocking job";
+            }
+        };
+        BackgroundJobStatus<String> first = scheduler.schedule(blocking);
+        BackgroundJobStatus<String> second = scheduler.schedule(blocking);
+        BackgroundJobStatus<String> waiting = scheduler.schedule(new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) {
+                return monitor.isAborting() ? "aborted" : "not aborted";
+            }
+
+            @Override
+            public String getDescription() {
+                return "waiting job";
+            }
+        });
+        scheduler.ensureStarted();
+        assertTrue(busy.await(10, TimeUnit.SECONDS));
+        // both workers are busy, so the third job cannot leave STARTING
+        while (waiting.getState() == State.SCHEDULED) {
+            Thread.sleep(1);
+        }
+        assertEquals(State.STARTING, waiting.getState());
+        waiting.abort();
+        assertEquals(State.ABORTING_STARTING, waiting.getState());
+        release.countDown();
+        waiting.join(0);
+        assertEquals(State.ABORTED, waiting.getState());
+        first.join(0);
+        second.join(0);
+        assertEquals(State.SUCCEEDED, first.getState());
+        assertEquals(State.SUCCEEDED, second.getState());
+    }
+
+    @Test
+    public void testRejectedJobFails() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        scheduler.setThreadFactory(new PooledBackgroundThreadFactory(executor));
+        List<BackgroundJobStatus<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(scheduler.schedule(new BackgroundJob<String>() {
+                @Override
+                public String work(BackgroundJobMonitor monitor) {
+                    return "done";
+                }
+
+                @Override
+                public String getDescription() {
+                    return "rejected job";
+                }
+            }));
+        }
+        scheduler.ensureStarted();
+        // more jobs than worker slots, so the slots must be given back
+        for (BackgroundJobStatus<String> job : jobs) {
+            job.join(10000);
+            assertEquals(State.FAILED, job.getState());
+            try {
+                job.result();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertEquals(0, scheduler.getMetrics().getActiveWorkers());
+    }
+}
@@ -35,10 +35,16 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -247,4 +253,299 @@ public class ScheduledJobTest {
         assertEquals(State.ABORTED, scheduledJob.getState());
         seq.throwAnyError();
     }
+
+    @Test
+    public void testConcurrentProgressReports() throws Exception {
+        final AtomicInteger lastDelivered = new AtomicInteger();
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                lastDelivered.accumulateAndGet(e.getWorkDone(), Math::max);
+            }
+        });
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(4 * 100000);
+              Thread[] reporters = new Thread[4];
+              for (int i = 0; i < reporters.length; i++) {
+                  reporters[i] = new Thread(() -> {
+                      for (int j = 0; j < 100000; j++) {
+                          monitor.reportProgressIncrement(1);
+                      }
+                  });
+                  reporters[i].start();
+              }
+              for (Thread reporter : reporters) {
+                  reporter.join();
+              }
+              return "result";
+          });
+        scheduledJob.execute();
+        assertEquals("result", scheduledJob.result());
+        assertEquals(400000, scheduledJob.getWorkDone());
+        assertEquals(400000, scheduledJob.getWorkTotal());
+        // the final value is never lost
+        assertEquals(400000, lastDelivered.get());
+    }
+
+    @Test
+    public void testSlowListenerCoalescesConcurrentReports() throws Exception {
+        final AtomicInteger inListener = new AtomicInteger();
+        final AtomicInteger maxInListener = new AtomicInteger();
+        final AtomicInteger deliveries = new AtomicInteger();
+        final AtomicInteger lastDelivered = new AtomicInteger();
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                maxInListener.accumulateAndGet(inListener.incrementAndGet(), Math::max);
+                deliveries.incrementAndGet();
+                lastDelivered.set(e.getWorkDone());
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                inListener.decrementAndGet();
+            }
+        });
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              Thread[] reporters = new Thread[2];
+              for (int i = 0; i < reporters.length; i++) {
+                  reporters[i] = new Thread(() -> {
+                      for (int j = 0; j < 500; j++) {
+                          monitor.reportProgressIncrement(1);
+                      }
+                  });
+                  reporters[i].start();
+              }
+              for (Thread reporter : reporters) {
+                  reporter.join();
+              }
+              return "result";
+          });
+        scheduledJob.execute();
+        assertEquals("result", scheduledJob.result());
+        // one thread at a time runs the listener, the other one moves on
+        assertEquals(1, maxInListener.get());
+        assertTrue(deliveries.get() < 1000);
+        assertEquals(1000, lastDelivered.get());
+    }
+
+    @Test
+    public void testLongProgress() throws Exception {
+        final List<JobEvent> events = new ArrayList<>();
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                events.add(e);
+            }
+        });
+        final long terabyte = 1L << 40;
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(4 * terabyte);
+              monitor.reportProgressAbsolute(2 * terabyte);
+              monitor.reportProgressIncrement(terabyte);
+              return "result";
+          });
+        scheduledJob.execute();
+        assertEquals("result", scheduledJob.result());
+        assertEquals(3 * terabyte, scheduledJob.getWorkDoneLong());
+        assertEquals(4 * terabyte, scheduledJob.getWorkTotalLong());
+        // the int view keeps the ratio
+        assertEquals(0.75, (double) scheduledJob.getWorkDone() / scheduledJob.getWorkTotal(), 1e-6);
+        final JobEvent last = events.get(events.size() - 1);
+        assertEquals(3 * terabyte, last.getWorkDoneLong());
+        assertEquals(4 * terabyte, last.getWorkTotalLong());
+        assertEquals(scheduledJob.getWorkTotal(), last.getWorkTotal());
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        final CountDownLatch stop = new CountDownLatch(1);
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(100000);
+              // about 1000 units per second
+              while (!stop.await(10, TimeUnit.MILLISECONDS)) {
+                  monitor.reportProgressIncrement(10);
+              }
+              return "result";
+          });
+        assertEquals(0, scheduledJob.getThroughput(), 0);
+        assertEquals(-1, scheduledJob.getEstimatedTimeRemaining());
+        scheduledJob.execute();
+        Thread.sleep(300);
+        final double throughput = scheduledJob.getThroughput();
+        assertTrue("throughput " + throughput, throughput > 200 && throughput < 2000);
+        assertTrue(scheduledJob.getEstimatedTimeRemaining() > 10000);
+        stop.countDown();
+        assertEquals("result", scheduledJob.result());
+        assertEquals(0, scheduledJob.getThroughput(), 0);
+    }
+
+    private List<String> recordEvents() {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+                assertEquals(JobEvent.Type.STATE_CHANGED, e.getType());
+                events.add(e.getOldState() + " -> " + e.getNewState());
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                assertEquals(JobEvent.Type.PROGRESS_UPDATED, e.getType());
+                events.add("progress " + e.getWorkDone() + "/" + e.getWorkTotal());
+            }
+        });
+        return events;
+    }
+
+    private void reportOneByOne(final int count) throws Exception {
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(count);
+              for (int i = 0; i < count; i++) {
+                  monitor.reportProgressIncrement(1);
+              }
+              return "result";
+          });
+    }
+
+    @Test
+    public void testProgressCoalescingByTime() throws Exception {
+        final List<String> events = recordEvents();
+        scheduledJob.setProgressCoalescing(3600 * 1000, 0);
+        reportOneByOne(1000);
+        scheduledJob.execute();
+        scheduledJob.join(0);
+        assertEquals("[SCHEDULED -> STARTING, STARTING -> RUNNING, progress 0/1000, "
+          + "progress 1000/1000, RUNNING -> SUCCEEDED]", events.toString());
+    }
+
+    @Test
+    public void testProgressCoalescingByUnits() throws Exception {
+        final List<String> events = recordEvents();
+        scheduledJob.setProgressCoalescing(0, 250);
+        reportOneByOne(1000);
+        scheduledJob.execute();
+        scheduledJob.join(0);
+        assertEquals("[SCHEDULED -> STARTING, STARTING -> RUNNING, progress 0/1000, "
+          + "progress 250/1000, progress 500/1000, progress 750/1000, progress 1000/1000, "
+          + "RUNNING -> SUCCEEDED]", events.toString());
+    }
+
+    @Test
+    public void testProgressCoalescingByUnitsWhilePolled() throws Exception {
+        final List<String> events = recordEvents();
+        scheduledJob.setProgressCoalescing(0, 10);
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(20);
+              for (int i = 0; i < 20; i++) {
+                  monitor.reportProgressIncrement(1);
+                  // as a UI would, must not reset the count towards the next event
+                  scheduledJob.getLastModified();
+              }
+              return "result";
+          });
+        scheduledJob.execute();
+        scheduledJob.join(0);
+        assertEquals("[SCHEDULED -> STARTING, STARTING -> RUNNING, progress 0/20, "
+          + "progress 10/20, progress 20/20, RUNNING -> SUCCEEDED]", events.toString());
+    }
+
+    @Test
+    public void testDeferredProgressIsFlushed() throws Exception {
+        final List<String> events = recordEvents();
+        final CountDownLatch finish = new CountDownLatch(1);
+        scheduledJob.setProgressCoalescing(100, 0);
+        when(job.work(any(BackgroundJobMonitor.class)))
+          .thenAnswer((Answer<String>) invocation -> {
+              final BackgroundJobMonitor monitor = invocation.getArgument(0);
+              monitor.announceTotal(10);
+              monitor.reportProgressIncrement(1);
+              // then nothing for a long time
+              finish.await(10, TimeUnit.SECONDS);
+              return "result";
+          });
+        scheduledJob.execute();
+        for (int i = 0; i < 200 && !events.contains("progress 1/10"); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(events.toString(), events.contains("progress 1/10"));
+        assertEquals(State.RUNNING, scheduledJob.getState());
+        finish.countDown();
+        scheduledJob.join(0);
+    }
+
+    @Test
+    public void testStateOnlySubscription() throws Exception {
+        final List<String> events = new ArrayList<>();
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+                events.add(e.getOldState() + " -> " + e.getNewState());
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+                fail("not subscribed to progress");
+            }
+        }, JobEvent.Type.STATE_CHANGED);
+        reportOneByOne(1000);
+        scheduledJob.execute();
+        scheduledJob.join(0);
+        assertEquals(1000, scheduledJob.getWorkDone());
+        assertEquals("[SCHEDULED -> STARTING, STARTING -> RUNNING, RUNNING -> SUCCEEDED]", events.toString());
+    }
+
+    @Test
+    public void testStateTimestamps() throws Exception {
+        final List<Long> timestamps = new ArrayList<>();
+        scheduledJob.addJobListener(new JobListener() {
+            @Override
+            public void stateChanged(JobEvent e) {
+                assertEquals(e.getTimestamp(), e.getSource().getStateTimestamp(e.getNewState()));
+                timestamps.add(e.getTimestamp());
+            }
+
+            @Override
+            public void progressInfoUpdated(JobEvent e) {
+            }
+        }, JobEvent.Type.STATE_CHANGED);
+        long scheduled = scheduledJob.getStateTimestamp(State.SCHEDULED);
+        assertNotEquals(0, scheduled);
+        assertEquals(0, scheduledJob.getStateTimestamp(State.STARTING));
+        scheduledJob.execute();
+        scheduledJob.join(0);
+        assertEquals(3, timestamps.size());
+        assertEquals((long) timestamps.get(0), scheduledJob.getStateTimestamp(State.STARTING));
+        assertEquals((long) timestamps.get(1), scheduledJob.getStateTimestamp(State.RUNNING));
+        assertEquals((long) timestamps.get(2), scheduledJob.getStateTimestamp(State.SUCCEEDED));
+        assertTrue(scheduled <= timestamps.get(0));
+        assertTrue(timestamps.get(0) <= timestamps.get(1));
+        assertTrue(timestamps.get(1) <= timestamps.get(2));
+        assertEquals(0, scheduledJob.getStateTimestamp(State.ABORTING));
+    }
 }
@@ -0,0 +1,159 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobMonitor.Severity;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TailBackgroundJobLogFactoryTest {
+
+    private static class LoggingJob implements BackgroundJob<Void> {
+        private final int lines;
+
+        LoggingJob(int lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public Void work(BackgroundJobMonitor monitor) {
+            for (int i = 1; i <= lines; i++) {
+                monitor.log(Severity.INFO, "line " + i);
+            }
+            return null;
+        }
+
+        @Override
+        public String getDescription() {
+            return "logging job";
+        }
+    }
+
+    @Test
+    public void testTailAndCursor() {
+        TailBackgroundJobLogFactory factory = new TailBackgroundJobLogFactory(3, 10000, null);
+        BackgroundJobLog log = factory.createJobLog("job");
+        log.log(Severity.INFO, "one");
+        log.log(Severity.WARNING, "two");
+        assertEquals("[INFO: one, WARNING: two]", factory.getTail("job", 10).toString());
+
+        List<TailBackgroundJobLogFactory.LogLine> lines = factory.getLinesAfter("job", 0, 10);
+        long cursor = lines.get(lines.size() - 1).getSequence();
+        log.log(Severity.INFO, "three");
+        log.log(Severity.INFO, "four");
+        log.close();
+        assertEquals("[INFO: three, INFO: four]", factory.getLinesAfter("job", cursor, 10).toString());
+        assertEquals("[WARNING: two, INFO: three, INFO: four]", factory.getTail("job", 10).toString());
+        assertEquals("[INFO: four]", factory.getTail("job", 1).toString());
+        assertTrue(factory.getTail("unknown", 10).isEmpty());
+        assertTrue(factory.getTail("job", -1).isEmpty());
+        assertTrue(factory.getLinesAfter("job", 0, -1).isEmpty());
+    }
+
+    @Test
+    public void testReusedIdStartsEmpty() {
+        TailBackgroundJobLogFactory factory = new TailBackgroundJobLogFactory(10, 10000, null);
+        BackgroundJobLog log = factory.createJobLog("job");
+        log.log(Severity.INFO, "earlier job");
+        log.close();
+        log = factory.createJobLog("job");
+        log.log(Severity.INFO, "later job");
+        assertEquals("[INFO: later job]", factory.getTail("job", 10).toString());
+        assertEquals(1, factory.getTail("job", 10).get(0).getSequence());
+    }
+
+    @Test
+    public void testBytesLimit() {
+        TailBackgroundJobLogFactory factory = new TailBackgroundJobLogFactory(100, 500, null);
+        BackgroundJobLog log = factory.createJobLog("job");
+        for (int i = 0; i < 100; i++) {
+            log.log(Severity.INFO, "0123456789");
+        }
+        // 100 bytes per line
+        assertEquals(5, factory.getTail("job", 100).size());
+        log.log(Severity.INFO, new String(new char[1000]));
+        assertEquals(1, factory.getTail("job", 100).size());
+        assertEquals(250, factory.getTail("job", 1).get(0).getMessage().length());
+    }
+
+    @Test
+    public void testReleasedWhenEvicted() throws Exception {
+        TailBackgroundJobLogFactory factory = new TailBackgroundJobLogFactory(10, 10000, null);
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        scheduler.setJobLogFactory(factory);
+        scheduler.setJobsToKeep(1);
+        scheduler.schedule("first", new LoggingJob(20));
+        scheduler.executeNext().join(0);
+        assertEquals("[INFO: line 19, INFO: line 20]", factory.getTail("first", 2).toString());
+        scheduler.schedule("second", new LoggingJob(1));
+        scheduler.executeNext().join(0);
+        assertTrue(factory.getTail("first", 2).isEmpty());
+        assertEquals(1, factory.getTail("second", 2).size());
+    }
+
+    @Test
+    public void testThroughScheduler() throws Exception {
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        scheduler.setJobLogFactory(new TailBackgroundJobLogFactory(10, 10000, null));
+        scheduler.schedule("job", new LoggingJob(3));
+        scheduler.executeNext().join(0);
+        // the factory that created the log, even once it was replaced
+        scheduler.setJobLogFactory(new TailBackgroundJobLogFactory(10, 10000, null));
+        assertEquals("[INFO: line 2, INFO: line 3]", scheduler.getLogTail("job", 2).toString());
+        List<TailBackgroundJobLogFactory.LogLine> lines = scheduler.getLogLinesAfter("job", 0, 1);
+        assertEquals("[INFO: line 1]", lines.toString());
+        assertEquals("[INFO: line 2, INFO: line 3]",
+                scheduler.getLogLinesAfter("job", lines.get(0).getSequence(), 10).toString());
+        assertTrue(scheduler.getLogTail("unknown", 2).isEmpty());
+
+        BackgroundJobScheduler plain = new BackgroundJobScheduler();
+        plain.schedule("job", new LoggingJob(3));
+        plain.executeNext().join(0);
+        assertTrue(plain.getLogTail("job", 2).isEmpty());
+    }
+
+    @Test
+    public void testReleasedByReplacedFactory() throws Exception {
+        TailBackgroundJobLogFactory first = new TailBackgroundJobLogFactory(10, 10000, null);
+        TailBackgroundJobLogFactory second = new TailBackgroundJobLogFactory(10, 10000, null);
+        BackgroundJobScheduler scheduler = new BackgroundJobScheduler();
+        scheduler.setJobLogFactory(first);
+        scheduler.setJobsToKeep(1);
+        scheduler.schedule("first", new LoggingJob(1));
+        scheduler.executeNext().join(0);
+        assertEquals(1, first.getTail("first", 2).size());
+        scheduler.setJobLogFactory(second);
+        scheduler.schedule("second", new LoggingJob(1));
+        scheduler.executeNext().join(0);
+        assertTrue(first.getTail("first", 2).isEmpty());
+        assertEquals(1, second.getTail("second", 2).size());
+    }
+}
@@ -0,0 +1,124 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import org.evolvis.tartools.backgroundjobs.BackgroundJobInfo.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualBackgroundThreadFactoryTest {
+    private static final int JOBS = 10000;
+
+    private BackgroundJobScheduler scheduler;
+
+    @Before
+    public void setup() {
+        assumeTrue("virtual threads not supported by this JVM", VirtualBackgroundThreadFactory.isSupported());
+        scheduler = new BackgroundJobScheduler();
+        scheduler.setThreadFactory(new VirtualBackgroundThreadFactory());
+        scheduler.setParallelism(JOBS);
+        scheduler.setJobsToKeep(JOBS);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testManyConcurrentBlockingJobs() throws Exception {
+        final CountDownLatch allRunning = new CountDownLatch(JOBS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final int threadsBefore = Thread.activeCount();
+        List<BackgroundJobStatus<Boolean>> jobs = new ArrayList<>();
+        for (int i = 0; i < JOBS; i++) {
+            jobs.add(scheduler.schedule(new BackgroundJob<Boolean>() {
+                @Override
+                public Boolean work(BackgroundJobMonitor monitor) throws Exception {
+                    allRunning.countDown();
+                    return release.await(60, TimeUnit.SECONDS);
+                }
+
+                @Override
+                public String getDescription() {
+                    return "blocking job";
+                }
+            }));
+        }
+        scheduler.ensureStarted();
+        assertTrue(allRunning.await(60, TimeUnit.SECONDS));
+        // all jobs are blocked at the same time, but no platform thread was
+        // created for them (Thread.activeCount() only counts platform threads)
+        assertTrue(Thread.activeCount() < threadsBefore + 100);
+        release.countDown();
+        for (BackgroundJobStatus<Boolean> job : jobs) {
+            job.join(0);
+            assertEquals(Boolean.TRUE, job.result());
+            assertEquals(State.SUCCEEDED, job.getState());
+        }
+    }
+
+    @Test
+    public void testAbortInterruptsVirtualThread() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        BackgroundJobStatus<String> job = scheduler.schedule(new BackgroundJob<String>() {
+            @Override
+            public String work(BackgroundJobMonitor monitor) {
+                running.countDown();
+                try {
+                    Thread.sleep(60000);
+                    return "slept";
+                } catch (InterruptedException e) {
+                    return monitor.isAborting() ? "aborted" : "interrupted";
+                }
+            }
+
+            @Override
+            public String getDescription() {
+                return "sleeping job";
+            }
+        });
+        scheduler.ensureStarted();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        job.abort();
+        job.join(0);
+        assertEquals(State.ABORTED, job.getState());
+    }
+}
@@ -0,0 +1,194 @@
+package org.evolvis.tartools.backgroundjobs;
+
+/*-
+ * Background-Jobs is Copyright
+ *  © 2012 Атанас Александров (a.alexandrov@tarent.de)
+ *  © 2012, 2013, 2014, 2015 Lukas Degener (l.degener@qvest-digital.com)
+ *  © 2015, 2016 Jens Oberender (j.oberender@tarent.de)
+ * Licensor: Qvest Digital AG, Bonn, Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkflowBackgroundJobTest {
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger progress = new AtomicInteger();
+    private BackgroundJobMonitor monitor;
+
+    @Before
+    public void setUp() {
+        monitor = new BackgroundJobMonitor() {
+
+            @Override
+            public void log(final Severity severity, final Object message) {
+            }
+
+            @Override
+            public boolean isAborting() {
+                return false;
+            }
+
+            @Override
+            public String getScheduledJobId() {
+                return null;
+            }
+
+            @Override
+            public void announceTotal(final int totalItems) {
+                total.set(totalItems);
+            }
+
+            @Override
+            public void reportProgressIncrement(final int items) {
+                progress.addAndGet(items);
+            }
+
+            @Override
+            public void reportProgressAbsolute(final int items) {
+                progress.set(items);
+            }
+        };
+    }
+
+    @Test
+    public void testFanOutFanIn() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        WorkflowBackgroundJob job = new WorkflowBackgroundJob("etl", 4)
+                .addStep("extract", (monitor, inputs) -> 20)
+                .addStep("double", (monitor, inputs) -> {
+                    // only passes if both branches run at the same time
+                    barrier.await(5, TimeUnit.SECONDS);
+                    return (Integer) inputs.get("extract") * 2;
+                }, "extract")
+                .addStep("increment", 3, (monitor, inputs) -> {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    Thread.sleep(50);
+                    return (Integer) inputs.get("extract") + 1;
+                }, "extract")
+                .addStep("load", (monitor, inputs) -> (Integer) inputs.get("double") + (Integer) inputs.get("increment"),
+                        "double", "increment");
+        WorkflowBackgroundJob.Result result = job.work(monitor);
+
+        assertEquals(Integer.valueOf(61), result.get("load"));
+        assertEquals(600, total.get());
+        assertEquals(600, progress.get());
+        assertEquals(Arrays.asList("extract", "increment", "load"), result.getCriticalPath());
+        assertTrue(result.getTiming("increment").getDuration() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(result.getTiming("load").getStart() >= result.getTiming("increment").getFinish());
+        assertTrue(result.getCriticalPathTime() <= result.getElapsedTime());
+    }
+
+    @Test
+    public void testBackgroundJobSteps() throws Exception {
+        final AtomicInteger order = new AtomicInteger();
+        BackgroundJob<Integer> first = new BackgroundJob<Integer>() {
+            @Override
+            public Integer work(BackgroundJobMonitor monitor) throws Exception {
+                return order.incrementAndGet();
+            }
+
+            @Override
+            public String getDescription() {
+                return "first";
+            }
+        };
+        BackgroundJob<Integer> second = new BackgroundJob<Integer>() {
+            @Override
+            public Integer work(BackgroundJobMonitor monitor) throws Exception {
+                return order.incrementAndGet();
+            }
+
+            @Override
+            public String getDescription() {
+                return "second";
+            }
+        };
+        WorkflowBackgroundJob.Result result = new WorkflowBackgroundJob("jobs", 2)
+                .addStep("first", first)
+                .addStep("second", new WeightedBackgroundJob<>(second, 2), "first")
+                .work(monitor);
+        assertEquals(Integer.valueOf(1), result.get("first"));
+        assertEquals(Integer.valueOf(2), result.get("second"));
+        assertEquals(300, progress.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownInput() {
+        new WorkflowBackgroundJob("broken", 1).addStep("a", (monitor, inputs) -> null, "b");
+    }
+
+    @Test
+    public void testFailureSkipsDependentSteps() throws Exception {
+        final CountDownLatch dependentRan = new CountDownLatch(1);
+        WorkflowBackgroundJob job = new WorkflowBackgroundJob("failing", 2)
+                .addStep("a", (monitor, inputs) -> {
+                    throw new IllegalStateException("failed");
+                })
+                .addStep("b", (monitor, inputs) -> {
+                    dependentRan.countDown();
+                    return null;
+                }, "a");
+        try {
+            job.work(monitor);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertFalse(dependentRan.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testInputsAreOnlyTheDeclaredOnes() throws Exception {
+        WorkflowBackgroundJob.Result result = new WorkflowBackgroundJob("inputs", 1)
+                .addStep("a", (monitor, inputs) -> "a")
+                .addStep("b", (monitor, inputs) -> "b")
+                .addStep("c", (monitor, inputs) -> inputs, "b")
+                .work(monitor);
+        Map<String, Object> inputs = result.get("c");
+        assertEquals(1, inputs.size());
+        assertEquals("b", inputs.get("b"));
+    }
+
+    @Test
+    public void testStepsAddedWhileRunningAreIgnored() throws Exception {
+        final WorkflowBackgroundJob job = new WorkflowBackgroundJob("growing", 2);
+        job.addStep("a", (monitor, inputs) -> {
+            job.addStep("late", (m, in) -> "late", "a");
+            return "a";
+        }).addStep("b", (monitor, inputs) -> "b", "a");
+        WorkflowBackgroundJob.Result result = job.work(monitor);
+        assertEquals("b", result.get("b"));
+        assertFalse(result.isCompleted("late"));
+    }
+}